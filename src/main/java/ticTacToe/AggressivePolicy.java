@@ -21,16 +21,11 @@ public class AggressivePolicy extends Policy {
 		for(Move m:moves)
 		{
 			
-			Game resulting=null;
-			try{
-				resulting=g.simulateMove(m);
-			}
-			catch(IllegalMoveException e)
-			{
-				System.out.println(e.getMessage());
-				e.printStackTrace();
-			}
-			if (resulting.getState()==Game.X_WON||resulting.getState()==Game.O_WON)
+			//evaluate the move on copies of the board masks, rather than simulating it on a copy of the game;
+			//the game itself is only read
+			int bit=1<<Game.cell(m.x, m.y);
+			int state=(m.who.getName()=='X')?Game.evaluate(g.xBoard|bit, g.oBoard):Game.evaluate(g.xBoard, g.oBoard|bit);
+			if (state==Game.X_WON||state==Game.O_WON)
 				return m;
 		}
 		
@@ -0,0 +1,360 @@
+package ticTacToe;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Solves the Tic Tac Toe MDP for many reward and discount settings at once, for
+ * parameter sweeps.
+ *
+ * The states, actions, transitions and probabilities of a {@link TTTMDP} do not
+ * depend on its rewards: the reward of a transition only depends on the status
+ * of the game it leads to (win, loss, draw or still ongoing). So one
+ * {@link CompiledMDP} is compiled once and shared by every {@link Config}, and
+ * each transition's reward is looked up per configuration from the status of
+ * its target state.
+ *
+ * All configurations are solved together by backward induction (see
+ * {@link CompiledMDP#reverseTopologicalOrder()}): the values of all
+ * configurations are stored side by side per state, so each transition is read
+ * once and applied to every configuration in a tight inner loop. States with
+ * the same number of pieces do not depend on each other, so the states of each
+ * level are backed up in parallel on {@link #pool}. For every configuration the
+ * result is the same as a {@link ValueIterationAgent} in
+ * {@link ValueIterationAgent.Mode#RETROGRADE} mode.
+ *
+ */
+public class BatchSolver {
+
+	/**
+	 * One setting of the rewards of a {@link TTTMDP} and of the discount factor.
+	 */
+	public static class Config {
+		public final double winReward;
+		public final double loseReward;
+		public final double livingReward;
+		public final double drawReward;
+		public final double discount;
+
+		public Config(double win, double lose, double live, double draw, double discount) {
+			this.winReward = win;
+			this.loseReward = lose;
+			this.livingReward = live;
+			this.drawReward = draw;
+			this.discount = discount;
+		}
+
+		/**
+		 * @return the reward of a transition to a game with status {@code status}
+		 *         (one of {@link Game#ONGOING}, {@link Game#X_WON},
+		 *         {@link Game#O_WON}, {@link Game#DRAW})
+		 */
+		double rewardFor(int status) {
+			switch (status) {
+			case Game.X_WON:
+				return winReward;
+			case Game.O_WON:
+				return loseReward;
+			case Game.DRAW:
+				return drawReward;
+			default:
+				return livingReward;
+			}
+		}
+
+		public String toString() {
+			return "win=" + winReward + " lose=" + loseReward + " live=" + livingReward + " draw=" + drawReward
+					+ " discount=" + discount;
+		}
+	}
+
+	/**
+	 * The solution for one {@link Config}: the optimal values and moves of the
+	 * states of the shared {@link CompiledMDP}, and the statistics of its solve,
+	 * reported the same way as a {@link ValueIterationAgent} in
+	 * {@link ValueIterationAgent.Mode#RETROGRADE} mode does.
+	 */
+	public static class Result {
+		public final Config config;
+
+		/**
+		 * the value of each state of {@link BatchSolver#model}
+		 */
+		final double[] values;
+
+		/**
+		 * the best action of each state, -1 for terminal states
+		 */
+		final int[] actions;
+
+		/**
+		 * the residual of the single backward pass (the largest change in a state's
+		 * value, from 0), and the number of backups of non-terminal states
+		 */
+		final double residual;
+		final long backups;
+
+		private final CompiledMDP model;
+		private Policy policy;
+
+		Result(Config config, CompiledMDP model, double[] values, int[] actions, double residual, long backups) {
+			this.config = config;
+			this.model = model;
+			this.values = values;
+			this.actions = actions;
+			this.residual = residual;
+			this.backups = backups;
+		}
+
+		/**
+		 * @return the number of sweeps: always 1, as every state is backed up once, in
+		 *         reverse topological order
+		 */
+		public int getSweeps() {
+			return 1;
+		}
+
+		/**
+		 * @return the residual (largest change in a state's value) of each sweep, see
+		 *         {@link ValueIterationAgent#getResiduals()}
+		 */
+		public double[] getResiduals() {
+			return new double[] { residual };
+		}
+
+		/**
+		 * @return the number of Bellman backups of non-terminal states for this
+		 *         configuration
+		 */
+		public long getBackups() {
+			return backups;
+		}
+
+		/**
+		 * @return the value of {@code g} (or of its canonical form), 0 if it is not a
+		 *         state of the model
+		 */
+		public double getValue(Game g) {
+			int s = model.stateOf(g);
+			return (s < 0) ? 0.0 : values[s];
+		}
+
+		/**
+		 * @return the value of the empty board
+		 */
+		public double getStartValue() {
+			return getValue(new Game());
+		}
+
+		/**
+		 * @return the optimal policy for this configuration, built on first call
+		 */
+		public synchronized Policy getPolicy() {
+			if (policy == null)
+				policy = model.toPolicy(actions);
+			return policy;
+		}
+
+		/**
+		 * @return the number of states whose best move differs from {@code other}'s
+		 */
+		public int policyDifferences(Result other) {
+			int differences = 0;
+			for (int s = 0; s < actions.length; s++)
+				if (actions[s] != other.actions[s])
+					differences++;
+			return differences;
+		}
+
+		public String toString() {
+			return config + " startValue=" + getStartValue() + " residual=" + residual;
+		}
+	}
+
+	/**
+	 * The model shared by all configurations. Its rewards are not used.
+	 */
+	final CompiledMDP model;
+
+	/**
+	 * The pool the states of each level are backed up on
+	 */
+	ForkJoinPool pool = ForkJoinPool.commonPool();
+
+	/**
+	 * The states in reverse topological order, and where each level (number of
+	 * pieces on the board) starts in it: level {@code l} is
+	 * {@code order[levelStart[l]]} to {@code order[levelStart[l+1]-1]}.
+	 */
+	private final int[] order;
+	private final int[] levelStart;
+
+	private long lastNanos = 0;
+	private long lastBackups = 0;
+
+	/**
+	 * Compiles the default {@link TTTMDP} once, to be shared by every batch solved
+	 * with this solver.
+	 */
+	public BatchSolver() {
+		this(new TTTMDP().compile());
+	}
+
+	public BatchSolver(CompiledMDP model) {
+		this.model = model;
+		this.order = model.reverseTopologicalOrder();
+
+		// the order is by decreasing number of pieces, so each level is a run
+		StateIndex index = StateIndex.get();
+		int[] starts = new int[11];
+		int levels = 0;
+		int previous = -1;
+		for (int i = 0; i < order.length; i++) {
+			int pieces = Integer.bitCount(index.xBoard(model.stateIndex[order[i]]) | index.oBoard(model.stateIndex[order[i]]));
+			if (pieces != previous) {
+				starts[levels++] = i;
+				previous = pieces;
+			}
+		}
+		starts[levels] = order.length;
+		this.levelStart = new int[levels + 1];
+		System.arraycopy(starts, 0, levelStart, 0, levels + 1);
+	}
+
+	/**
+	 * Solves the MDP for every configuration in {@code configs}, together.
+	 *
+	 * @return a {@link Result} per configuration, in the same order
+	 */
+	public List<Result> solve(List<Config> configs) {
+		long start = System.nanoTime();
+		final int n = model.numStates();
+		final int k = configs.size();
+
+		// per status (ONGOING, X_WON, O_WON, DRAW) and configuration, the reward of a
+		// transition into a state with that status
+		final double[] rewards = new double[4 * k];
+		final double[] discounts = new double[k];
+		for (int c = 0; c < k; c++) {
+			Config config = configs.get(c);
+			for (int status = 0; status < 4; status++)
+				rewards[status * k + c] = config.rewardFor(status);
+			discounts[c] = config.discount;
+		}
+
+		// the values and best actions of state s for configuration c are at s*k+c.
+		// Terminal states keep a value of 0 and no action.
+		final double[] v = new double[n * k];
+		final int[] best = new int[n * k];
+		for (int s = 0; s < n; s++)
+			if (model.isTerminal(s))
+				for (int c = 0; c < k; c++)
+					best[s * k + c] = -1;
+
+		// scratch buffers for the backups, one pair per worker thread
+		final ThreadLocal<double[]> q = ThreadLocal.withInitial(() -> new double[k]);
+		final ThreadLocal<double[]> bestValue = ThreadLocal.withInitial(() -> new double[k]);
+		for (int level = 0; level + 1 < levelStart.length; level++) {
+			final int first = levelStart[level];
+			ParallelStates.forEach(pool, levelStart[level + 1] - first,
+					i -> backup(order[first + i], k, rewards, discounts, v, best, q.get(), bestValue.get()));
+		}
+
+		// split the results per configuration. Every value started at 0 and was
+		// backed up once, so the residual of the pass is the largest value
+		long backups = n - countTerminal();
+		List<Result> results = new ArrayList<Result>(k);
+		for (int c = 0; c < k; c++) {
+			double[] values = new double[n];
+			int[] actions = new int[n];
+			double residual = 0.0;
+			for (int s = 0; s < n; s++) {
+				values[s] = v[s * k + c];
+				actions[s] = best[s * k + c];
+				residual = Math.max(residual, Math.abs(values[s]));
+			}
+			results.add(new Result(configs.get(c), model, values, actions, residual, backups));
+		}
+
+		lastBackups = backups * k;
+		lastNanos = System.nanoTime() - start;
+		return results;
+	}
+
+	/**
+	 * Backs up state {@code s} for all {@code k} configurations, the same way as
+	 * {@link CompiledMDP#backup} and {@link CompiledMDP#bestAction} (the first
+	 * best action is kept on ties). {@code q} and {@code bestValue} are scratch
+	 * buffers of length {@code k}.
+	 */
+	private void backup(int s, int k, double[] rewards, double[] discounts, double[] v, int[] best, double[] q,
+			double[] bestValue) {
+		if (model.isTerminal(s))
+			return;
+
+		for (int c = 0; c < k; c++) {
+			bestValue[c] = Double.NEGATIVE_INFINITY;
+			best[s * k + c] = -1;
+		}
+		for (int a = model.actionStart[s]; a < model.actionStart[s + 1]; a++) {
+			for (int c = 0; c < k; c++)
+				q[c] = 0.0;
+			for (int t = model.transitionStart[a]; t < model.transitionStart[a + 1]; t++) {
+				double p = model.prob[t];
+				int target = model.next[t] * k;
+				int reward = model.status[model.next[t]] * k;
+				for (int c = 0; c < k; c++)
+					q[c] += p * (rewards[reward + c] + discounts[c] * v[target + c]);
+			}
+			for (int c = 0; c < k; c++)
+				if (q[c] > bestValue[c]) {
+					bestValue[c] = q[c];
+					best[s * k + c] = a;
+				}
+		}
+		for (int c = 0; c < k; c++)
+			v[s * k + c] = bestValue[c];
+	}
+
+	private int countTerminal() {
+		int terminal = 0;
+		for (int s = 0; s < model.numStates(); s++)
+			if (model.isTerminal(s))
+				terminal++;
+		return terminal;
+	}
+
+	/**
+	 * @return the wall time of the last {@link #solve}, in nanoseconds
+	 */
+	public long getLastNanos() {
+		return lastNanos;
+	}
+
+	/**
+	 * @return the number of state backups done by the last {@link #solve}, over
+	 *         all configurations
+	 */
+	public long getLastBackups() {
+		return lastBackups;
+	}
+
+	public static void main(String[] args) {
+		/**
+		 * Sweeps the losing reward and the discount factor, and prints the value of the
+		 * empty board for each setting.
+		 */
+		List<Config> configs = new ArrayList<Config>();
+		for (int lose = -100; lose <= 0; lose += 10)
+			for (int discount = 5; discount <= 9; discount++)
+				configs.add(new Config(10, lose, -1, 0, discount / 10.0));
+
+		BatchSolver solver = new BatchSolver();
+		List<Result> results = solver.solve(configs);
+		for (Result r : results)
+			System.out.println(r);
+		System.out.println(configs.size() + " configurations solved in " + solver.getLastNanos() / 1000 + "us");
+	}
+
+}
@@ -0,0 +1,279 @@
+package ticTacToe;
+
+import java.util.Random;
+
+/**
+ * A Reinforcement Learning environment that runs many Tic Tac Toe games side by side, stepping all of them at once.
+ * Like {@link TTTEnvironment}, the learning agent plays X, and the opponent, part of the environment, plays O and
+ * replies straight after each of X's moves, so it is X's turn in every game that is not over.
+ *
+ * The games are stored as arrays of primitives, one entry per game: the board masks, the game hash (see
+ * {@link Game#hashCode()}) and the game state. {@link #step} takes X's moves for all games in one array and writes the
+ * opponent's replies and the rewards into arrays provided by the caller, so no {@link Game}, {@link Move} or
+ * {@link Outcome} objects are created. The opponent is an {@link OpponentModel}, sampled on the board masks.
+ *
+ */
+public class BatchTTTEnvironment {
+
+	double winReward=10.0;
+	double loseReward=-50.0;
+	double livingReward=-1.00;
+	double drawReward=0.0;
+
+	/**
+	 * The opponent, null for a uniformly random one (the default)
+	 */
+	final OpponentModel opponent;
+
+	/**
+	 * Per game: the X and O board masks, the game hash and the game state (one of {@link Game#ONGOING},
+	 * {@link Game#X_WON}, {@link Game#O_WON}, {@link Game#DRAW})
+	 */
+	final int[] xBoard;
+	final int[] oBoard;
+	final int[] hash;
+	final byte[] status;
+
+	Random random=new Random();
+
+	/**
+	 * scratch space for the opponent's reply distribution
+	 */
+	private final double[] reply=new double[9];
+
+	/**
+	 * {@code size} games against a uniformly random opponent, with the default rewards
+	 * @param size
+	 */
+	public BatchTTTEnvironment(int size)
+	{
+		this(size, null);
+	}
+
+	public BatchTTTEnvironment(int size, OpponentModel opponent)
+	{
+		if (size<1)
+			throw new IllegalArgumentException("At least one game is needed");
+		this.opponent=opponent;
+		xBoard=new int[size];
+		oBoard=new int[size];
+		hash=new int[size];
+		status=new byte[size];
+		reset();
+	}
+
+	public BatchTTTEnvironment(int size, OpponentModel opponent, double winReward, double loseReward, double livingReward, double drawReward)
+	{
+		this(size, opponent);
+		this.winReward=winReward;
+		this.loseReward=loseReward;
+		this.livingReward=livingReward;
+		this.drawReward=drawReward;
+	}
+
+	/**
+	 * Resets all games to the empty board.
+	 */
+	public void reset()
+	{
+		for(int i=0;i<xBoard.length;i++)
+			reset(i);
+	}
+
+	/**
+	 * Resets game {@code i} to the empty board.
+	 */
+	public void reset(int i)
+	{
+		xBoard[i]=0;
+		oBoard[i]=0;
+		hash[i]=1;//empty board, X to play
+		status[i]=Game.ONGOING;
+	}
+
+	/**
+	 * @return the number of games
+	 */
+	public int size()
+	{
+		return xBoard.length;
+	}
+
+	public int getXBoard(int i)
+	{
+		return xBoard[i];
+	}
+
+	public int getOBoard(int i)
+	{
+		return oBoard[i];
+	}
+
+	/**
+	 * @return the state of game {@code i}: {@link Game#ONGOING}, {@link Game#X_WON}, {@link Game#O_WON} or
+	 * {@link Game#DRAW}
+	 */
+	public int getStatus(int i)
+	{
+		return status[i];
+	}
+
+	public boolean isTerminal(int i)
+	{
+		return status[i]!=Game.ONGOING;
+	}
+
+	/**
+	 * @return the {@link StateIndex} index of game {@code i}, e.g. for a {@link QTable}
+	 */
+	public int getStateIndex(int i)
+	{
+		return StateIndex.get().indexOf(hash[i]);
+	}
+
+	/**
+	 * @return the cells X can play in game {@code i} as a mask, 0 if the game is over
+	 */
+	public int getLegalMoves(int i)
+	{
+		return (status[i]==Game.ONGOING)?~(xBoard[i]|oBoard[i])&Game.FULL_BOARD:0;
+	}
+
+	/**
+	 * @return a new {@link Game} with the position of game {@code i}
+	 */
+	public Game toGame(int i)
+	{
+		return Game.fromBoards(xBoard[i], oBoard[i], (hash[i]%3==1)?'X':'O');
+	}
+
+	/**
+	 * Plays X's move {@code cells[i]} in every game {@code i} that is not over, followed by the opponent's reply if
+	 * the game goes on. Games that are already over are skipped.
+	 *
+	 * @param cells X's move (cell) in each game. Ignored for games that are over.
+	 * @param opponentCells filled in with the opponent's reply in each game, or -1 if it didn't play
+	 * @param rewards filled in with the reward of each game's step, as in {@link TTTEnvironment#executeMove}, 0 for
+	 * games that were already over
+	 * @return the number of games that are still going on
+	 * @throws IllegalArgumentException if a move plays an occupied cell of a game that is not over. No game is
+	 * stepped then, and the output arrays are left unchanged.
+	 */
+	public int step(int[] cells, int[] opponentCells, double[] rewards)
+	{
+		// check every move first, so an illegal one doesn't leave the batch half stepped
+		for(int i=0;i<xBoard.length;i++)
+		{
+			int k=cells[i];
+			if (status[i]==Game.ONGOING && (k<0 || k>8 || ((xBoard[i]|oBoard[i])&(1<<k))!=0))
+				throw new IllegalArgumentException("Illegal move "+k+" in game "+i);
+		}
+
+		int ongoing=0;
+		for(int i=0;i<xBoard.length;i++)
+		{
+			opponentCells[i]=-1;
+			rewards[i]=0.0;
+			if (status[i]!=Game.ONGOING)
+				continue;
+
+			int k=cells[i];
+
+			// X's move, then it's O's turn
+			xBoard[i]|=1<<k;
+			hash[i]+=Game.CELL_WEIGHTS[k]+1;
+			status[i]=(byte)Game.evaluate(xBoard[i], oBoard[i]);
+			if (status[i]==Game.X_WON)
+			{
+				rewards[i]=winReward;
+				continue;
+			}
+			else if (status[i]==Game.DRAW)
+			{
+				rewards[i]=drawReward;
+				continue;
+			}
+
+			// the opponent's reply, then it's X's turn again
+			int o=opponentMove(xBoard[i], oBoard[i]);
+			opponentCells[i]=o;
+			oBoard[i]|=1<<o;
+			hash[i]+=2*Game.CELL_WEIGHTS[o]-1;
+			status[i]=(byte)Game.evaluate(xBoard[i], oBoard[i]);
+			if (status[i]==Game.O_WON)
+				rewards[i]=loseReward;
+			else if (status[i]==Game.DRAW)
+				rewards[i]=drawReward;
+			else
+			{
+				rewards[i]=livingReward;
+				ongoing++;
+			}
+		}
+		return ongoing;
+	}
+
+	/**
+	 * @return the opponent's (O's) reply in the ongoing game with boards {@code x} and {@code o}
+	 */
+	private int opponentMove(int x, int o)
+	{
+		int empty=~(x|o)&Game.FULL_BOARD;
+		if (opponent==null)
+			return randomCell(empty);
+
+		opponent.replyDistribution(x, o, false, reply);
+		double r=random.nextDouble();
+		int last=-1;
+		for(int k=0;k<9;k++)
+		{
+			if (reply[k]==0)
+				continue;
+			last=k;
+			r-=reply[k];
+			if (r<0)
+				return k;
+		}
+		//rounding: the probabilities added up to slightly less than r
+		return last;
+	}
+
+	/**
+	 * @return one of the cells of {@code cells}, uniformly at random
+	 */
+	int randomCell(int cells)
+	{
+		for(int r=random.nextInt(Integer.bitCount(cells));r>0;r--)
+			cells&=cells-1;
+		return Integer.numberOfTrailingZeros(cells);
+	}
+
+	public static void main(String[] args)
+	{
+		/**
+		 * Plays a batch of random games in lockstep and prints how they ended.
+		 */
+		BatchTTTEnvironment env=new BatchTTTEnvironment(10000);
+		int[] cells=new int[env.size()];
+		int[] replies=new int[env.size()];
+		double[] rewards=new double[env.size()];
+
+		long start=System.nanoTime();
+		int ongoing=env.size();
+		while (ongoing>0)
+		{
+			for(int i=0;i<env.size();i++)
+				if (!env.isTerminal(i))
+					cells[i]=env.randomCell(env.getLegalMoves(i));
+			ongoing=env.step(cells, replies, rewards);
+		}
+		long nanos=System.nanoTime()-start;
+
+		int[] results=new int[4];
+		for(int i=0;i<env.size();i++)
+			results[env.getStatus(i)]++;
+		System.out.println("X won: "+results[Game.X_WON]+" O won: "+results[Game.O_WON]+" Draws: "+results[Game.DRAW]);
+		System.out.println(env.size()+" games in "+nanos/1000+"us");
+	}
+
+}
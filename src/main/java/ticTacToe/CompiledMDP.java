@@ -0,0 +1,440 @@
+package ticTacToe;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * A {@link TTTMDP} compiled, once, into flat primitive arrays, so that planning
+ * agents can sweep the state space without calling
+ * {@link TTTMDP#generateTransitions} (and allocating {@link Game}s,
+ * {@link Outcome}s and {@link TransitionProb}s) for every state and move in
+ * every sweep.
+ *
+ * States are numbered {@code 0} to {@code numStates()-1}. They are the canonical
+ * (see {@link Game#canonical()}) games where it is X's turn, plus all canonical
+ * terminal games, in increasing hash order. If the MDP's opponent does not play
+ * the same in symmetric games (see {@link OpponentModel#isSymmetric()}),
+ * symmetric games can't share a state, and all games are used instead. The model is stored in compressed
+ * sparse row form:
+ * <ul>
+ * <li>the actions (moves) available in state {@code s} are numbered
+ * {@code actionStart[s]} to {@code actionStart[s+1]-1}; terminal states have
+ * none. {@code actionCell[a]} is the cell played by action {@code a}.</li>
+ * <li>the transitions of action {@code a} are numbered {@code transitionStart[a]}
+ * to {@code transitionStart[a+1]-1}. Transition {@code t} leads to state
+ * {@code next[t]} with probability {@code prob[t]} and reward
+ * {@code reward[t]}.</li>
+ * </ul>
+ * Opponent replies that lead to the same state are merged into one transition.
+ *
+ * A compiled model is immutable. Its arrays are package-private for the solvers
+ * in this package, which must not write to them.
+ *
+ */
+public class CompiledMDP {
+
+	/**
+	 * The MDP this model was compiled from. Its reward fields should not be changed
+	 * after compiling.
+	 */
+	final TTTMDP mdp;
+
+	/**
+	 * Whether the states are canonical games, each standing for all of its
+	 * symmetric games
+	 */
+	final boolean symmetric;
+
+	/**
+	 * Per state: the index in {@link StateIndex} and the game state (one of
+	 * {@link Game#ONGOING}, {@link Game#X_WON}, {@link Game#O_WON},
+	 * {@link Game#DRAW}).
+	 */
+	final int[] stateIndex;
+	final byte[] status;
+
+	/**
+	 * Maps a {@link StateIndex} index to a state of this model, or -1.
+	 */
+	final int[] stateOfIndex;
+
+	final int[] actionStart;
+	final byte[] actionCell;
+
+	final int[] transitionStart;
+	final int[] next;
+	final double[] prob;
+	final double[] reward;
+
+	/**
+	 * The predecessors of each state, in the same compressed form: the states with
+	 * an action that can lead to state {@code s} are
+	 * {@code predecessor[predecessorStart[s]]} to
+	 * {@code predecessor[predecessorStart[s+1]-1]}. Built on first use, see
+	 * {@link #predecessors()}.
+	 */
+	private int[] predecessorStart;
+	private int[] predecessor;
+
+	/**
+	 * The states ordered by decreasing number of pieces on the board, built on
+	 * first use, see {@link #reverseTopologicalOrder()}.
+	 */
+	private int[] reverseTopologicalOrder;
+
+	/**
+	 * Compiles {@code mdp}. This calls {@link TTTMDP#generateTransitions} once for
+	 * every state and legal move.
+	 *
+	 * @param mdp
+	 */
+	public CompiledMDP(TTTMDP mdp) {
+		this.mdp = mdp;
+		this.symmetric = mdp.opponent == null || mdp.opponent.isSymmetric();
+		StateIndex index = StateIndex.get();
+
+		// number the states: (canonical) X-to-play or terminal games
+		stateOfIndex = new int[index.size()];
+		int numStates = 0;
+		for (int i = 0; i < index.size(); i++) {
+			stateOfIndex[i] = -1;
+			if (index.whoseTurn(i) != 'X' && index.status(i) == Game.ONGOING)
+				continue;
+			if (!symmetric || index.gameAt(i).isCanonical())
+				stateOfIndex[i] = numStates++;
+		}
+		stateIndex = new int[numStates];
+		status = new byte[numStates];
+		for (int i = 0; i < index.size(); i++)
+			if (stateOfIndex[i] >= 0) {
+				stateIndex[stateOfIndex[i]] = i;
+				status[stateOfIndex[i]] = (byte) index.status(i);
+			}
+
+		// first pass counts actions, second fills them in. There are at most 9
+		// actions per state and 8 transitions per action.
+		int numActions = 0;
+		for (int s = 0; s < numStates; s++)
+			if (status[s] == Game.ONGOING)
+				numActions += 9 - Integer.bitCount(index.xBoard(stateIndex[s]) | index.oBoard(stateIndex[s]));
+
+		actionStart = new int[numStates + 1];
+		actionCell = new byte[numActions];
+		transitionStart = new int[numActions + 1];
+		int[] nextBuf = new int[numActions * 8];
+		double[] probBuf = new double[numActions * 8];
+		double[] rewardBuf = new double[numActions * 8];
+
+		int a = 0;
+		int t = 0;
+		HashMap<Integer, Integer> merged = new HashMap<Integer, Integer>();
+		for (int s = 0; s < numStates; s++) {
+			actionStart[s] = a;
+			if (status[s] != Game.ONGOING)
+				continue;
+
+			Game g = index.gameAt(stateIndex[s]);
+			for (Move m : g.getPossibleMoves()) {
+				actionCell[a] = (byte) Game.cell(m.x, m.y);
+				transitionStart[a] = t;
+				merged.clear();
+				List<TransitionProb> transitions = mdp.generateTransitions(g, m);
+				for (TransitionProb tp : transitions) {
+					int target = stateOf(tp.outcome.sPrime);
+					if (target < 0)
+						throw new IllegalStateException("Transition to a game that is not a state:" + tp.outcome.sPrime);
+
+					Integer existing = merged.get(target);
+					if (existing != null) {
+						probBuf[existing] += tp.prob;
+						continue;
+					}
+					merged.put(target, t);
+					nextBuf[t] = target;
+					probBuf[t] = tp.prob;
+					rewardBuf[t] = tp.outcome.localReward;
+					t++;
+				}
+				a++;
+			}
+		}
+		actionStart[numStates] = a;
+		transitionStart[a] = t;
+
+		next = new int[t];
+		prob = new double[t];
+		reward = new double[t];
+		System.arraycopy(nextBuf, 0, next, 0, t);
+		System.arraycopy(probBuf, 0, prob, 0, t);
+		System.arraycopy(rewardBuf, 0, reward, 0, t);
+	}
+
+	/**
+	 * A model with the same states, actions and transitions as {@code structure},
+	 * sharing its arrays, but with the rewards of {@code mdp}. The reward of a
+	 * transition only depends on the status of the state it leads to.
+	 */
+	private CompiledMDP(CompiledMDP structure, TTTMDP mdp) {
+		this.mdp = mdp;
+		symmetric = structure.symmetric;
+		stateIndex = structure.stateIndex;
+		status = structure.status;
+		stateOfIndex = structure.stateOfIndex;
+		actionStart = structure.actionStart;
+		actionCell = structure.actionCell;
+		transitionStart = structure.transitionStart;
+		next = structure.next;
+		prob = structure.prob;
+
+		reward = new double[next.length];
+		for (int t = 0; t < next.length; t++)
+			reward[t] = mdp.rewardFor(status[next[t]]);
+	}
+
+	/**
+	 * Recompiles this model for {@code mdp}, whose rewards may differ from those of
+	 * {@link #mdp}. Only the rewards are recomputed; nothing else depends on them,
+	 * so the structure is shared and {@link TTTMDP#generateTransitions} is not
+	 * called.
+	 *
+	 * @return the model of {@code mdp}
+	 */
+	CompiledMDP withRewards(TTTMDP mdp) {
+		return new CompiledMDP(this, mdp);
+	}
+
+	/**
+	 * @return true if this model can be recompiled for {@code mdp} with
+	 *         {@link #withRewards}, i.e. {@code mdp} has the same opponent as
+	 *         {@link #mdp}. The model of {@code mdp} then has the same states,
+	 *         numbered the same way, so values and policies of this model carry
+	 *         over to it. No opponent model is the same as
+	 *         {@link OpponentModel#UNIFORM}.
+	 */
+	boolean sameDynamics(TTTMDP mdp) {
+		return opponentOf(mdp).equals(opponentOf(this.mdp));
+	}
+
+	private static OpponentModel opponentOf(TTTMDP mdp) {
+		return (mdp.opponent == null) ? OpponentModel.UNIFORM : mdp.opponent;
+	}
+
+	/**
+	 * Builds the predecessor lists ({@link #predecessorStart} and
+	 * {@link #predecessor}), if that has not been done yet. A predecessor is
+	 * listed once per state, however many of its transitions lead there.
+	 */
+	private synchronized void buildPredecessors() {
+		if (predecessorStart != null)
+			return;
+
+		int n = numStates();
+		int[] start = new int[n + 1];
+		int[] last = new int[n];
+
+		// count the distinct predecessors of each state...
+		Arrays.fill(last, -1);
+		for (int s = 0; s < n; s++)
+			for (int t = transitionStart[actionStart[s]]; t < transitionStart[actionStart[s + 1]]; t++)
+				if (last[next[t]] != s) {
+					last[next[t]] = s;
+					start[next[t] + 1]++;
+				}
+		for (int i = 0; i < n; i++)
+			start[i + 1] += start[i];
+
+		// ...then fill them in
+		int[] list = new int[start[n]];
+		int[] fill = Arrays.copyOf(start, n);
+		Arrays.fill(last, -1);
+		for (int s = 0; s < n; s++)
+			for (int t = transitionStart[actionStart[s]]; t < transitionStart[actionStart[s + 1]]; t++)
+				if (last[next[t]] != s) {
+					last[next[t]] = s;
+					list[fill[next[t]]++] = s;
+				}
+
+		predecessor = list;
+		predecessorStart = start;
+	}
+
+	/**
+	 * @return the offsets into {@link #predecessors()} of the predecessors of each
+	 *         state: those of state {@code s} run from {@code predecessorStart()[s]}
+	 *         to {@code predecessorStart()[s+1]-1}. Must not be modified.
+	 */
+	int[] predecessorStart() {
+		buildPredecessors();
+		return predecessorStart;
+	}
+
+	/**
+	 * @return the predecessors of all states, see {@link #predecessorStart()}. Must
+	 *         not be modified.
+	 */
+	int[] predecessors() {
+		buildPredecessors();
+		return predecessor;
+	}
+
+	/**
+	 * Every move adds a piece to the board, so each transition leads to a state
+	 * with more pieces and the state graph is acyclic. Visiting the states by
+	 * decreasing number of pieces, from full boards back to the empty one,
+	 * reaches every state after all of its successors. A single Bellman backup per
+	 * state in this order therefore gives the exact values (backward induction).
+	 *
+	 * @return all states, by decreasing number of pieces. Must not be modified.
+	 */
+	synchronized int[] reverseTopologicalOrder() {
+		if (reverseTopologicalOrder != null)
+			return reverseTopologicalOrder;
+
+		// counting sort on the number of pieces, 9 down to 0
+		StateIndex index = StateIndex.get();
+		int n = numStates();
+		int[] pieces = new int[n];
+		int[] start = new int[11];
+		for (int s = 0; s < n; s++) {
+			pieces[s] = Integer.bitCount(index.xBoard(stateIndex[s]) | index.oBoard(stateIndex[s]));
+			start[9 - pieces[s] + 1]++;
+		}
+		for (int i = 0; i < 10; i++)
+			start[i + 1] += start[i];
+
+		int[] order = new int[n];
+		for (int s = 0; s < n; s++)
+			order[start[9 - pieces[s]]++] = s;
+
+		reverseTopologicalOrder = order;
+		return reverseTopologicalOrder;
+	}
+
+	/**
+	 * @return the number of states
+	 */
+	public int numStates() {
+		return stateIndex.length;
+	}
+
+	/**
+	 * @return the total number of actions over all states
+	 */
+	public int numActions() {
+		return actionCell.length;
+	}
+
+	/**
+	 * @return the total number of transitions over all actions
+	 */
+	public int numTransitions() {
+		return next.length;
+	}
+
+	/**
+	 * @return the state of {@code g} (of its canonical form, if the states are
+	 *         canonical), or -1 if it is not a state of this model (e.g. it is O's
+	 *         turn and the game is not over)
+	 */
+	public int stateOf(Game g) {
+		Game c = symmetric ? g.canonical() : g;
+		int i = StateIndex.get().indexOf(c.hashCode());
+		return (i < 0) ? -1 : stateOfIndex[i];
+	}
+
+	/**
+	 * @return a new {@link Game} for state {@code s}
+	 */
+	public Game gameAt(int s) {
+		return StateIndex.get().gameAt(stateIndex[s]);
+	}
+
+	public boolean isTerminal(int s) {
+		return status[s] != Game.ONGOING;
+	}
+
+	/**
+	 * @return the move played by action {@code a}
+	 */
+	public Move moveOf(int a) {
+		return new Move('X', actionCell[a] / 3, actionCell[a] % 3);
+	}
+
+	/**
+	 * @return the expected value of action {@code a} when the states are valued by
+	 *         {@code v}: the sum over its transitions of
+	 *         {@code prob * (reward + discount * v[next])}
+	 */
+	public double qValue(int a, double[] v, double discount) {
+		double q = 0.0;
+		for (int t = transitionStart[a]; t < transitionStart[a + 1]; t++)
+			q += prob[t] * (reward[t] + discount * v[next[t]]);
+		return q;
+	}
+
+	/**
+	 * A Bellman backup of state {@code s}.
+	 *
+	 * @return the value of the best action in {@code s}, or {@code v[s]} if
+	 *         {@code s} is terminal
+	 */
+	public double backup(int s, double[] v, double discount) {
+		int end = actionStart[s + 1];
+		if (actionStart[s] == end)
+			return v[s];
+
+		double best = Double.NEGATIVE_INFINITY;
+		for (int a = actionStart[s]; a < end; a++) {
+			double q = qValue(a, v, discount);
+			if (q > best)
+				best = q;
+		}
+		return best;
+	}
+
+	/**
+	 * @return the action with the highest expected value in {@code s} (the first
+	 *         one, on ties), or -1 if {@code s} is terminal
+	 */
+	public int bestAction(int s, double[] v, double discount) {
+		int best = -1;
+		double bestValue = Double.NEGATIVE_INFINITY;
+		for (int a = actionStart[s]; a < actionStart[s + 1]; a++) {
+			double q = qValue(a, v, discount);
+			if (q > bestValue) {
+				bestValue = q;
+				best = a;
+			}
+		}
+		return best;
+	}
+
+	/**
+	 * @return the greedy policy with respect to {@code v}, see
+	 *         {@link #toPolicy(int[])}
+	 */
+	public Policy extractPolicy(double[] v, double discount) {
+		HashMap<Game, Move> map = new HashMap<Game, Move>();
+		for (int s = 0; s < numStates(); s++) {
+			int a = bestAction(s, v, discount);
+			if (a >= 0)
+				map.put(gameAt(s), moveOf(a));
+		}
+		return symmetric ? new SymmetricPolicy(map) : new Policy(map);
+	}
+
+	/**
+	 * @param actions an action per state, -1 for terminal states
+	 * @return the policy playing {@code actions}, as a {@link SymmetricPolicy} if
+	 *         the states are canonical
+	 */
+	public Policy toPolicy(int[] actions) {
+		HashMap<Game, Move> map = new HashMap<Game, Move>();
+		for (int s = 0; s < numStates(); s++)
+			if (actions[s] >= 0)
+				map.put(gameAt(s), moveOf(actions[s]));
+		return symmetric ? new SymmetricPolicy(map) : new Policy(map);
+	}
+
+}
@@ -18,10 +18,10 @@ public Move getMove(Game g) {
 		
 		for(Move m: moves)
 		{
-			Game resulting=g.clone();
-			resulting.getBoard()[m.x][m.y]=m.who.getName();
-			resulting.evaluateGameState();
-			if (resulting.getState()==Game.X_WON||resulting.getState()==Game.O_WON)
+			//evaluate the opponent's move on copies of the board masks, so the game itself is only read
+			int bit=1<<Game.cell(m.x, m.y);
+			int state=(m.who.getName()=='X')?Game.evaluate(g.xBoard|bit, g.oBoard):Game.evaluate(g.xBoard, g.oBoard|bit);
+			if (state==Game.X_WON||state==Game.O_WON)
 			{
 				Move newMove=new Move(m.who.getName()=='X'?'O':'X', m.x,m.y);
 				System.out.println("Playing defensive move");
@@ -36,7 +36,52 @@ public class Game {
 	 */
 	int state = 0;
 
-	char[][] board = new char[3][3];
+	/**
+	 * The board, stored as two 9-bit masks: one for the cells taken by X and one
+	 * for the cells taken by O. Cell (i,j) is bit {@code 3*i+j}. Use
+	 * {@link #getBoard()} for a char[][] view of it.
+	 */
+	int xBoard = 0;
+	int oBoard = 0;
+
+	/**
+	 * Mask with all nine cells set.
+	 */
+	static final int FULL_BOARD = 0x1FF;
+
+	/**
+	 * The 8 winning lines as cell masks, in the order they are checked by
+	 * {@link #evaluateGameState()}: rows, then columns, then the two diagonals.
+	 */
+	static final int[] WIN_MASKS = { 0x007, 0x038, 0x1C0, 0x049, 0x092, 0x124, 0x111, 0x054 };
+
+	/**
+	 * The base 3 place value of each cell in {@link #hashCode()}: cell k is digit
+	 * {@code 9-k}, since the last digit encodes whose turn it is.
+	 */
+	static final int[] CELL_WEIGHTS = { 19683, 6561, 2187, 729, 243, 81, 27, 9, 3 };
+
+	/**
+	 * The board part of {@link #hashCode()}, kept up to date by
+	 * {@link #setCell(int, int, char)} by adding or subtracting the place value of
+	 * the cell that changed.
+	 */
+	int boardHash = 0;
+
+	/**
+	 * The number of possible game hashes: 2222222222 in base 3, plus one. Not all
+	 * of them are valid games.
+	 */
+	static final int NUM_HASHES = 59049;
+
+	/**
+	 * Undo stack for {@link #push(int, int)} and {@link #pop()}. Each entry packs
+	 * the cell played (low 4 bits), the game state before the move (next 4 bits)
+	 * and whether it was X's turn (bit 8). Allocated on the first push; never
+	 * copied by {@link #clone()}.
+	 */
+	private int[] undoStack;
+	private int undoDepth = 0;
 
 	/**
 	 * the X agent
@@ -116,18 +161,68 @@ public class Game {
 		this.whoseTurn = g.whoseTurn;
 		// WARNING: Currently Agents are not deep copied
 
-		for (int i = 0; i < 3; i++)
-			for (int j = 0; j < 3; j++)
-				this.board[i][j] = g.board[i][j];
+		this.xBoard = g.xBoard;
+		this.oBoard = g.oBoard;
+		this.boardHash = g.boardHash;
+		this.state = g.state;
 
 	}
 
 	public void initBoard() {
-		// fill the board with e's (empty cells)
-		for (int i = 0; i < 3; i++)
-			for (int j = 0; j < 3; j++)
-				board[i][j] = ' ';
+		// all cells empty
+		xBoard = 0;
+		oBoard = 0;
+		boardHash = 0;
+
+	}
+
+	/**
+	 * @return the bit index of cell (x,y) in the board masks
+	 */
+	static int cell(int x, int y) {
+		return 3 * x + y;
+	}
+
+	/**
+	 * @return a mask of the cells that are still empty
+	 */
+	int emptyCells() {
+		return ~(xBoard | oBoard) & FULL_BOARD;
+	}
+
+	/**
+	 * @return the contents of cell (x,y): 'X', 'O' or ' ' if it is empty
+	 */
+	public char getCell(int x, int y) {
+		int bit = 1 << cell(x, y);
+		if ((xBoard & bit) != 0)
+			return 'X';
+		if ((oBoard & bit) != 0)
+			return 'O';
+		return ' ';
+	}
 
+	/**
+	 * Sets cell (x,y) to 'X', 'O' or ' ' without checking whose turn it is, and
+	 * without re-evaluating the game state.
+	 */
+	void setCell(int x, int y, char c) {
+		int k = cell(x, y);
+		int bit = 1 << k;
+		if ((xBoard & bit) != 0)
+			boardHash -= CELL_WEIGHTS[k];
+		else if ((oBoard & bit) != 0)
+			boardHash -= 2 * CELL_WEIGHTS[k];
+		xBoard &= ~bit;
+		oBoard &= ~bit;
+		if (c == 'X') {
+			xBoard |= bit;
+			boardHash += CELL_WEIGHTS[k];
+		} else if (c == 'O') {
+			oBoard |= bit;
+			boardHash += 2 * CELL_WEIGHTS[k];
+		} else if (c != ' ')
+			throw new IllegalArgumentException("A cell can only contain 'X', 'O' or ' '");
 	}
 
 	public boolean isLegal(Move m) {
@@ -138,7 +233,7 @@ public class Game {
 			return false;
 		}
 
-		if (board[m.x][m.y] != ' ')
+		if ((emptyCells() & (1 << cell(m.x, m.y))) == 0)
 			return false;
 
 		return true;
@@ -152,20 +247,21 @@ public class Game {
 	 */
 	public List<Game> getAllSuccessorGames() {
 		List<Game> result = new ArrayList<Game>();
-		for (int i = 0; i < 3; i++)
-			for (int j = 0; j < 3; j++) {
-				if (board[i][j] == ' ') {
-					Game newGame = null;
-					try {
-						newGame = this.simulateMove(whoseTurn.getName(), i, j);
-					} catch (IllegalMoveException e) {
-						System.out.println(e.getMessage());
-						e.printStackTrace();
-					}
-					// System.out.println("Adding:\n"+newGame);
-					result.add(newGame);
+		int empty = emptyCells();
+		for (int k = 0; k < 9; k++) {
+			if ((empty & (1 << k)) != 0) {
+				try {
+					push(k / 3, k % 3);
+				} catch (IllegalMoveException e) {
+					System.out.println(e.getMessage());
+					e.printStackTrace();
+					continue;
 				}
+				// System.out.println("Adding:\n"+this);
+				result.add(new Game(this));
+				pop();
 			}
+		}
 
 		return result;
 
@@ -181,23 +277,12 @@ public class Game {
 	 */
 	public static List<Game> generateAllValidGames(char xo) {
 		List<Game> result = new ArrayList<Game>();
-		// this is the number of possible game hashes (2222222222 in base 3): 59048 -
-		// not all are valid. Here we only return the valid ones.
-		for (int i = 0; i < 59048; i++) {
-			Game g = inverseHash(i);
-			if (g == null)
-				continue;
-
-			if (g.isValid()) {
-				// System.out.println("for:"+i);
-				// System.out.println("got:\n"+g);
-				// System.out.println("turn:"+g.whoseTurn.getName());
-				// System.out.println("--------");
-				g.evaluateGameState();
-				if (g.whoseTurn.getName() == xo || g.isTerminal())
-					result.add(g);
-			}
-
+		// the valid games are enumerated once per JVM by the StateIndex, in increasing
+		// hash order.
+		StateIndex index = StateIndex.get();
+		for (int i = 0; i < index.size(); i++) {
+			if (index.whoseTurn(i) == xo || index.status(i) != ONGOING)
+				result.add(index.gameAt(i));
 		}
 
 		return result;
@@ -214,11 +299,11 @@ public class Game {
 		if (getState() != ONGOING)
 			return possibleMoves;
 
-		for (int i = 0; i < 3; i++)
-			for (int j = 0; j < 3; j++) {
-				if (getBoard()[i][j] == ' ')
-					possibleMoves.add(new Move(whoseTurn, i, j));
-			}
+		int empty = emptyCells();
+		for (int k = 0; k < 9; k++) {
+			if ((empty & (1 << k)) != 0)
+				possibleMoves.add(new Move(whoseTurn, k / 3, k % 3));
+		}
 
 		return possibleMoves;
 
@@ -236,17 +321,29 @@ public class Game {
 		if (getState() != ONGOING)
 			return possibleMoves;
 
-		for (int i = 0; i < 3; i++)
-			for (int j = 0; j < 3; j++) {
-				if (getBoard()[i][j] == ' ')
-					possibleMoves.add(new Move((whoseTurn.getName() == 'X') ? 'O' : 'X', i, j));
-			}
+		char opponent = (whoseTurn.getName() == 'X') ? 'O' : 'X';
+		int empty = emptyCells();
+		for (int k = 0; k < 9; k++) {
+			if ((empty & (1 << k)) != 0)
+				possibleMoves.add(new Move(opponent, k / 3, k % 3));
+		}
 
 		return possibleMoves;
 
 	}
 
+	/**
+	 * A compatibility view of the board as a char[3][3] of 'X', 'O' and ' '. The
+	 * array is built on each call, so writing to it does not change the game; use
+	 * {@link #getCell(int, int)} when only a few cells are needed.
+	 * 
+	 * @return the board as a 3x3 char array
+	 */
 	public char[][] getBoard() {
+		char[][] board = new char[3][3];
+		for (int i = 0; i < 3; i++)
+			for (int j = 0; j < 3; j++)
+				board[i][j] = getCell(i, j);
 		return board;
 	}
 
@@ -255,7 +352,7 @@ public class Game {
 		for (int i = 0; i < 3; i++) {
 			result += "|";
 			for (int j = 0; j < 3; j++) {
-				result += board[i][j] + "|";
+				result += getCell(i, j) + "|";
 
 			}
 			result += "\n";
@@ -273,114 +370,33 @@ public class Game {
 	 * @return an integer representing the game state
 	 */
 	public int evaluateGameState() {
+		this.state = evaluate(xBoard, oBoard);
+		return this.state;
 
-		// checking columns
-		if (board[0][0] != ' ' && board[0][0] == board[0][1] && board[0][1] == board[0][2]) {
-			if (board[0][0] == 'X')
-				this.state = X_WON;
-			else
-				this.state = O_WON;
-
-			return this.state;
-
-		}
-		if (board[1][0] != ' ' && board[1][0] == board[1][1] && board[1][1] == board[1][2]) {
-			if (board[1][0] == 'X')
-				this.state = X_WON;
-			else
-				this.state = O_WON;
-
-			return this.state;
-
-		}
-		if (board[2][0] != ' ' && board[2][0] == board[2][1] && board[2][1] == board[2][2]) {
-			if (board[2][0] == 'X')
-				this.state = X_WON;
-			else
-				this.state = O_WON;
-
-			return this.state;
-
-		}
-
-		// checking rows
-
-		if (board[0][0] != ' ' && board[0][0] == board[1][0] && board[1][0] == board[2][0]) {
-			if (board[0][0] == 'X')
-				this.state = X_WON;
-			else
-				this.state = O_WON;
-
-			return this.state;
-
-		}
-		if (board[0][1] != ' ' && board[0][1] == board[1][1] && board[1][1] == board[2][1]) {
-			if (board[0][1] == 'X')
-				this.state = X_WON;
-			else
-				this.state = O_WON;
-
-			return this.state;
-
-		}
-		if (board[0][2] != ' ' && board[0][2] == board[1][2] && board[1][2] == board[2][2]) {
-			if (board[0][2] == 'X')
-				this.state = X_WON;
-			else
-				this.state = O_WON;
-
-			return this.state;
-
-		}
-
-		// checking diagnols
-
-		if (board[0][0] != ' ' && board[0][0] == board[1][1] && board[1][1] == board[2][2]) {
-			if (board[0][0] == 'X')
-				this.state = X_WON;
-			else
-				this.state = O_WON;
-
-			return this.state;
-
-		}
-
-		if (board[2][0] != ' ' && board[2][0] == board[1][1] && board[1][1] == board[0][2]) {
-			if (board[2][0] == 'X')
-				this.state = X_WON;
-			else
-				this.state = O_WON;
-
-			return this.state;
+	}
 
+	/**
+	 * Evaluates a board given as X and O masks.
+	 * 
+	 * @return one of DRAW, ONGOING, X_WON or O_WON
+	 */
+	static int evaluate(int xBoard, int oBoard) {
+		// rows, columns and diagonals, in that order
+		for (int line : WIN_MASKS) {
+			if ((xBoard & line) == line)
+				return X_WON;
+			if ((oBoard & line) == line)
+				return O_WON;
 		}
 
-		boolean spacesLeft = false;
-		for (int i = 0; i < 3; i++)
-			for (int j = 0; j < 3; j++) {
-				if (board[i][j] == ' ') {
-					spacesLeft = true;
-					break;
-
-				}
-			}
-
-		if (spacesLeft)
-			this.state = ONGOING;
+		if ((~(xBoard | oBoard) & FULL_BOARD) != 0)
+			return ONGOING;
 		else
-			this.state = DRAW;
-
-		return this.state;
-
+			return DRAW;
 	}
 
 	private int count(char xo) {
-		int count = 0;
-		for (int i = 0; i < 3; i++)
-			for (int j = 0; j < 3; j++)
-				if (board[i][j] == xo)
-					count++;
-		return count;
+		return Integer.bitCount(xo == 'X' ? xBoard : oBoard);
 	}
 
 	/**
@@ -432,11 +448,11 @@ public class Game {
 		if (whoseTurn == o && m.who.getName() != 'O')
 			throw new IllegalMoveException("it is not o's turn");
 
-		if (board[m.x][m.y] != ' ')
+		if (getCell(m.x, m.y) != ' ')
 			throw new IllegalMoveException("Invalid move. The square is " + m);
 
 		Game copy = clone();
-		copy.board[m.x][m.y] = m.who.getName();
+		copy.setCell(m.x, m.y, m.who.getName());
 		if (m.who.getName() == 'X')
 			copy.whoseTurn = copy.o;
 		else if (m.who.getName() == 'O')
@@ -462,10 +478,10 @@ public class Game {
 		if (whoseTurn == o && m.who.getName() != 'O')
 			throw new IllegalMoveException("it is not X's turn");
 
-		if (board[m.x][m.y] != ' ')
+		if (getCell(m.x, m.y) != ' ')
 			throw new IllegalMoveException("Invalid move. The location (" + m.x + "," + m.y + ") is not empty");
 
-		board[m.x][m.y] = m.who.getName();
+		setCell(m.x, m.y, m.who.getName());
 		if (whoseTurn.getName() == 'X')
 			whoseTurn = o;
 		else if (m.who.getName() == 'O')
@@ -491,6 +507,71 @@ public class Game {
 
 	}
 
+	/**
+	 * Plays move {@code m} on this game, like {@link #executeMove(Move)}, but
+	 * remembers it so that it can be taken back with {@link #pop()}. Together
+	 * these let search code walk the game tree in place, without a
+	 * {@link #clone()} per node.
+	 * 
+	 * @param m
+	 * @throws IllegalMoveException if it is not {@code m.who}'s turn, or the cell
+	 *                              is not empty
+	 */
+	public void push(Move m) throws IllegalMoveException {
+		if (m.who.getName() != whoseTurn.getName())
+			throw new IllegalMoveException("it is not " + m.who.getName() + "'s turn");
+
+		push(m.x, m.y);
+	}
+
+	/**
+	 * Plays cell (x,y) for whoever's turn it is, and remembers the move so that
+	 * {@link #pop()} can take it back.
+	 * 
+	 * @param x the x coordinate of the move (between 0 and 2 inclusive)
+	 * @param y the y coordinate of the move (between 0 and 2 inclusive)
+	 * @throws IllegalMoveException if the coordinates are out of range, the game is
+	 *                              over or the cell is not empty. The game is then
+	 *                              left unchanged.
+	 */
+	public void push(int x, int y) throws IllegalMoveException {
+		// validate before touching the board or the undo stack, so that a rejected
+		// move leaves nothing for pop() to take back
+		if (x < 0 || x > 2 || y < 0 || y > 2)
+			throw new IllegalMoveException("Invalid move. The location (" + x + "," + y + ") is off the board");
+		if (state != ONGOING)
+			throw new IllegalMoveException("Invalid move. The game is over");
+		if (getCell(x, y) != ' ')
+			throw new IllegalMoveException("Invalid move. The location (" + x + "," + y + ") is not empty");
+
+		if (undoStack == null)
+			undoStack = new int[9];
+		boolean xToMove = (whoseTurn == this.x);
+		int entry = cell(x, y) | (state << 4) | (xToMove ? 1 << 8 : 0);
+
+		setCell(x, y, xToMove ? 'X' : 'O');
+		undoStack[undoDepth++] = entry;
+		whoseTurn = xToMove ? o : this.x;
+		evaluateGameState();
+	}
+
+	/**
+	 * Takes back the last move played with {@link #push}, restoring the board,
+	 * whose turn it is and the game state exactly.
+	 * 
+	 * @throws IllegalStateException if there is no move to take back
+	 */
+	public void pop() {
+		if (undoDepth == 0)
+			throw new IllegalStateException("No pushed move to take back");
+
+		int entry = undoStack[--undoDepth];
+		int k = entry & 0xF;
+		setCell(k / 3, k % 3, ' ');
+		state = (entry >> 4) & 0xF;
+		whoseTurn = ((entry & (1 << 8)) != 0) ? x : o;
+	}
+
 	/**
 	 * 
 	 * /** This method will play out the game to the end using moves from the X and
@@ -555,28 +636,78 @@ public class Game {
 		// ' ' ->0
 		// 'X' ->1
 		// 'O' ->2
-		String s = "";
-		for (int i = 0; i < 3; i++)
-			for (int j = 0; j < 3; j++) {
-				switch (board[i][j]) {
-				case 'X':
-					s += "1";
-					break;
-				case 'O':
-					s += "2";
-					break;
-				case ' ':
-					s += "0";
-					break;
-				}
+		// the board digits are cached in boardHash; the last digit encodes whose
+		// turn it is. Either 1 or 2 (x or o)
+		return boardHash + ((whoseTurn == x) ? 1 : 2);
+
+	}
 
+	/**
+	 * Finds the symmetry (see {@link Symmetry}) that maps this game to its
+	 * canonical form: of the (up to 8) symmetric variants of the board, the one
+	 * with the lowest {@link #hashCode()}. Ties go to the lowest numbered symmetry,
+	 * so a game that is already canonical gets the identity, 0.
+	 * 
+	 * @return the symmetry that maps this game to its canonical form
+	 */
+	public int canonicalTransform() {
+		int best = 0;
+		int bestHash = boardHash;
+		for (int t = 1; t < Symmetry.COUNT; t++) {
+			int[] map = Symmetry.CELL_MAP[t];
+			int h = 0;
+			for (int k = 0; k < 9; k++) {
+				int bit = 1 << k;
+				if ((xBoard & bit) != 0)
+					h += CELL_WEIGHTS[map[k]];
+				else if ((oBoard & bit) != 0)
+					h += 2 * CELL_WEIGHTS[map[k]];
 			}
-		// also encode whose turn it is. Either 1 or 2 (x or o)
+			if (h < bestHash) {
+				bestHash = h;
+				best = t;
+			}
+		}
+		return best;
+	}
 
-		s += (whoseTurn == x) ? "1" : "2";
+	/**
+	 * @return true if this game is its own canonical form, see
+	 *         {@link #canonicalTransform()}
+	 */
+	public boolean isCanonical() {
+		return canonicalTransform() == 0;
+	}
 
-		return Integer.parseInt(s, 3);
+	/**
+	 * Applies symmetry {@code t} to this game.
+	 * 
+	 * @return a new game with the same agents, turn and state, and the transformed
+	 *         board
+	 */
+	public Game transform(int t) {
+		Game g = new Game(this);
+		g.xBoard = 0;
+		g.oBoard = 0;
+		g.boardHash = 0;
+		for (int k = 0; k < 9; k++) {
+			int bit = 1 << k;
+			int to = Symmetry.CELL_MAP[t][k];
+			if ((xBoard & bit) != 0)
+				g.setCell(to / 3, to % 3, 'X');
+			else if ((oBoard & bit) != 0)
+				g.setCell(to / 3, to % 3, 'O');
+		}
+		return g;
+	}
 
+	/**
+	 * @return the canonical form of this game, see {@link #canonicalTransform()}.
+	 *         This is the game itself if it is already canonical.
+	 */
+	public Game canonical() {
+		int t = canonicalTransform();
+		return (t == 0) ? this : transform(t);
 	}
 
 	/**
@@ -590,55 +721,64 @@ public class Game {
 	 * @return the Game corresponding to the hash
 	 */
 	public static Game inverseHash(int hash) {
+		if (hash < 0 || hash >= NUM_HASHES)
+			throw new IllegalArgumentException("Not a game hash: " + hash);
 
-		Game g = new Game();
-
-		String s1 = Integer.toString(hash, 3);
-
-		if (s1.charAt(s1.length() - 1) == '0')
+		// the last digit encodes whose turn it is: 1 for X, 2 for O.
+		int turn = hash % 3;
+		if (turn == 0)
 			return null;
 
-		// add leading 0's
-		String s = new String(s1);
+		int boards = decodeBoards(hash);
+		return fromBoards(boards & FULL_BOARD, boards >>> 9, (turn == 1) ? 'X' : 'O');
+	}
 
-		for (int i = 0; i < 10 - s1.length(); i++) {
-			s = "0" + s;
+	/**
+	 * Decodes the board digits of a game hash (see {@link #hashCode()}).
+	 * 
+	 * @return the X board mask in the low 9 bits, and the O board mask in the next
+	 *         9 bits
+	 */
+	static int decodeBoards(int hash) {
+		int xs = 0;
+		int os = 0;
+		int rest = hash / 3;
+		for (int k = 8; k >= 0; k--) {
+			if (rest % 3 == 1)
+				xs |= 1 << k;
+			else if (rest % 3 == 2)
+				os |= 1 << k;
+			rest /= 3;
 		}
-		// System.out.println("Intermediate string:"+s);
-		// set whose turn
-		if (s.charAt(s.length() - 1) == '1')
-			g.whoseTurn = g.x;
-		else if (s.charAt(s.length() - 1) == '2')
-			g.whoseTurn = g.o;
-
-		for (int l = s.length() - 2; l >= 0; l--) {
-			int i = (int) l / 3;
-			int j = (int) l % 3;
-			switch (s.charAt(l)) {
-			case '0':
-				g.board[i][j] = ' ';
-				break;
-			case '1':
-				g.board[i][j] = 'X';
-				break;
-			case '2':
-				g.board[i][j] = 'O';
-				break;
-			default:
-				throw new IllegalStateException("this shouldn't happen!");
+		return xs | (os << 9);
+	}
 
-			}
+	/**
+	 * Builds a game from its board masks (see {@link #xBoard}), with
+	 * {@code whoseTurn} ('X' or 'O') to play. Like {@link #inverseHash(int)}, the
+	 * game state is not evaluated.
+	 */
+	static Game fromBoards(int xBoard, int oBoard, char whoseTurn) {
+		Game g = new Game(whoseTurn);
+		for (int k = 0; k < 9; k++) {
+			if ((xBoard & (1 << k)) != 0)
+				g.setCell(k / 3, k % 3, 'X');
+			else if ((oBoard & (1 << k)) != 0)
+				g.setCell(k / 3, k % 3, 'O');
 		}
-
 		return g;
 	}
 
 	public boolean equals(Object other) {
-		if (other == null)
+		if (this == other)
+			return true;
+		else if (other == null)
 			return false;
 		else if (!(other instanceof Game))
 			return false;
 
+		// hashCode() is exact (one value per board and turn), so this compares the
+		// cached ints rather than the boards
 		return this.hashCode() == other.hashCode();
 	}
 
@@ -651,9 +791,11 @@ public class Game {
 		return this.state != ONGOING;
 	}
 
-	public static final String help = " -h this menu" + "\n -x the X agent: -x <pi, vi, random, agg, def, human>"
-			+ "\n -o the O agent: -o <random, agg, def, human>"
-			+ "\n -s the agent that starts the game (x or o): -s <x or o>";
+	public static final String help = " -h this menu"
+			+ "\n -x the X agent: -x <pi, vi, ql, search, mcts, random, agg, def, human>"
+			+ "\n -o the O agent: -o <vi, ql, search, mcts, random, agg, def, human>"
+			+ "\n -s the agent that starts the game (x or o): -s <x or o>"
+			+ "\n -w the number of threads the q learning agents train on (1 by default): -w <threads>";
 
 	// public static void main(String args[]) throws IllegalMoveException
 	// {
@@ -700,6 +842,22 @@ public class Game {
 		Agent x = null;
 		Agent o = null;
 		String whoseTurn = null;
+
+		// the agents are trained as the arguments are read, so the number of q learning
+		// threads is looked up first
+		int workers = 1;
+		int w = args.indexOf("-w");
+		if (w >= 0) {
+			try {
+				workers = Integer.parseInt(args.get(w + 1));
+			} catch (IndexOutOfBoundsException | NumberFormatException e) {
+				workers = 0;
+			}
+			if (workers < 1) {
+				System.out.println("Error: -w should be followed by a number of threads, at least 1");
+				return;
+			}
+		}
 		Iterator<String> iter = args.iterator();
 
 		while (iter.hasNext()) {
@@ -709,7 +867,7 @@ public class Game {
 			case "-x":
 				next = iter.next();
 				if (next == null || next.startsWith("-")) {
-					System.out.println("-x should be followed by the agent name, vi, pi, random, agg, def, or human");
+					System.out.println("-x should be followed by the agent name: vi, pi, ql, search, mcts, random, agg, def or human");
 					return;
 				}
 				if (next.equals("vi")) {
@@ -718,6 +876,12 @@ public class Game {
 				} else if (next.equals("pi")) {
 					System.out.println("X is pi agent.");
 					x = new PolicyIterationAgent();
+				} else if (next.equals("search")) {
+					System.out.println("X is search agent.");
+					x = new SearchAgent();
+				} else if (next.equals("mcts")) {
+					System.out.println("X is mcts agent.");
+					x = new MCTSAgent();
 				} else if (next.equals("random")) {
 					System.out.println("X is random agent.");
 					x = new RandomAgent();
@@ -733,9 +897,9 @@ public class Game {
 					x = new DefensiveAgent();
 				} else if (next.equals("ql")) {
 					System.out.println("X is q learning agent.");
-					x = new QLearningAgent();
+					x = new QLearningAgent(new RandomAgent(), 0.1, 70000, 0.9, workers);
 				} else {
-					System.out.println("-x should be followed by the agent type: vi, pi, ql, random or human");
+					System.out.println("-x should be followed by the agent type: vi, pi, ql, search, mcts, random, agg, def or human");
 					return;
 
 				}
@@ -747,14 +911,20 @@ public class Game {
 					System.out.println("-o should be followed by the agent name e.g. random or human");
 					return;
 				}
+				// the MDP agents only model X, so O plays the O policy of the two-sided
+				// solver, which solves both sides by value iteration in one backward pass
 				if (next.equals("vi")) {
-					System.out.println("Error: the value iteration agent should be the X agent");
-					return;
-				}
-
-				else if (next.equals("pi")) {
+					System.out.println("O is vi agent (two-sided solver).");
+					o = new ValueIterationAgent(new TwoSidedSolver().getOPolicy());
+				} else if (next.equals("pi")) {
 					System.out.println("Error: the policy iteration agent should be the X agent");
 					return;
+				} else if (next.equals("search")) {
+					System.out.println("O is search agent.");
+					o = new SearchAgent();
+				} else if (next.equals("mcts")) {
+					System.out.println("O is mcts agent.");
+					o = new MCTSAgent();
 				} else if (next.equals("random"))
 					o = new RandomAgent();
 				else if (next.equals("human")) {
@@ -769,9 +939,9 @@ public class Game {
 					o = new DefensiveAgent();
 				} else if (next.equals("ql")) {
 					System.out.println("O is q learning agent.");
-					o = new QLearningAgent();
+					o = new QLearningAgent(new RandomAgent(), 0.1, 70000, 0.9, workers);
 				} else {
-					System.out.println("Error: -x should be followed by the agent type: vi, pi, random or human");
+					System.out.println("Error: -o should be followed by the agent type: vi, ql, search, mcts, random, agg, def or human");
 					return;
 
 				}
@@ -790,6 +960,10 @@ public class Game {
 					return;
 				}
 				break;
+			case "-w":
+				// already read
+				iter.next();
+				break;
 
 			}
 
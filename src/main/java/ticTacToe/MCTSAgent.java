@@ -0,0 +1,35 @@
+package ticTacToe;
+
+/**
+ * A Monte Carlo Tree Search agent: it needs no training, and finds each move
+ * by searching from the current game within an iteration or time budget, on
+ * several threads (see {@link MCTSPolicy}).
+ *
+ */
+public class MCTSAgent extends Agent {
+
+	public MCTSAgent() {
+		super(new MCTSPolicy());
+	}
+
+	/**
+	 * @param threads    the number of search threads
+	 * @param iterations the number of iterations per move, or 0 for no limit
+	 * @param timeMillis the time limit per move in milliseconds, or 0 for no limit
+	 */
+	public MCTSAgent(int threads, int iterations, long timeMillis) {
+		super(new MCTSPolicy(threads, iterations, timeMillis));
+	}
+
+	public static void main(String[] args) throws IllegalMoveException {
+		/**
+		 * Test code to run the MCTS Agent against a Human Agent.
+		 */
+		MCTSAgent agent = new MCTSAgent();
+		HumanAgent h = new HumanAgent();
+
+		Game g = new Game(agent, h, h);
+		g.playOut();
+	}
+
+}
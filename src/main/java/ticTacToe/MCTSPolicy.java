@@ -0,0 +1,328 @@
+package ticTacToe;
+
+import java.util.Random;
+
+/**
+ * A policy that picks each move by Monte Carlo Tree Search with the UCT
+ * selection rule. Every iteration walks down the tree from the current game,
+ * picking the child with the best upper confidence bound, adds one new child,
+ * plays the game out with uniformly random moves (like {@link RandomPolicy}) and
+ * backs the result up the path.
+ *
+ * The search is root-parallel: each of {@link #threads} workers grows its own
+ * tree from the same game with its own random generator, and the visit counts
+ * of the root moves are added up at the end; the most visited move is played.
+ * Each worker's tree is a set of arrays allocated once and reused for every
+ * move, and playouts work on the board masks directly, so searching allocates
+ * nothing per iteration.
+ *
+ * The budget is a number of iterations per move (shared between the workers),
+ * a time limit per move, or both, whichever runs out first.
+ *
+ */
+public class MCTSPolicy extends Policy {
+
+	/**
+	 * The exploration constant of UCT
+	 */
+	static final double EXPLORATION = Math.sqrt(2);
+
+	/**
+	 * The tree size of a worker when there is no iteration budget
+	 */
+	static final int DEFAULT_CAPACITY = 1 << 16;
+
+	final int threads;
+	final int iterations;
+	final long timeMillis;
+
+	private final Worker[] workers;
+
+	/**
+	 * counters of the last {@link #getMove} call, and over all calls
+	 */
+	private long lastRollouts = 0;
+	private long lastNanos = 0;
+	private long totalRollouts = 0;
+	private long totalNanos = 0;
+
+	/**
+	 * One search thread per core, 20000 iterations per move
+	 */
+	public MCTSPolicy() {
+		this(Runtime.getRuntime().availableProcessors(), 20000, 0);
+	}
+
+	/**
+	 * @param threads    the number of worker threads
+	 * @param iterations the number of iterations per move, over all workers, or 0
+	 *                   for no limit
+	 * @param timeMillis the time limit per move in milliseconds, or 0 for no limit
+	 */
+	public MCTSPolicy(int threads, int iterations, long timeMillis) {
+		if (threads < 1)
+			throw new IllegalArgumentException("At least one thread is needed");
+		if (iterations < 0 || timeMillis < 0 || (iterations == 0 && timeMillis == 0))
+			throw new IllegalArgumentException("Either an iteration or a time budget is needed");
+		this.threads = threads;
+		this.iterations = iterations;
+		this.timeMillis = timeMillis;
+
+		int perWorker = (iterations + threads - 1) / threads;
+		workers = new Worker[threads];
+		for (int i = 0; i < threads; i++)
+			workers[i] = new Worker((iterations > 0) ? perWorker + 1 : DEFAULT_CAPACITY, new Random());
+	}
+
+	@Override
+	public synchronized Move getMove(Game g) {
+		if (g.getState() != Game.ONGOING)
+			return null;
+
+		long start = System.nanoTime();
+		final long deadline = (timeMillis > 0) ? start + timeMillis * 1000000L : Long.MAX_VALUE;
+		final boolean xToMove = g.whoseTurn.getName() == 'X';
+
+		// split the iterations between the workers
+		Thread[] running = new Thread[threads];
+		for (int i = 0; i < threads; i++) {
+			final Worker w = workers[i];
+			final int budget = (iterations > 0) ? iterations / threads + ((i < iterations % threads) ? 1 : 0)
+					: Integer.MAX_VALUE;
+			w.reset(g.xBoard, g.oBoard, xToMove);
+			if (threads == 1) {
+				w.search(budget, deadline);
+				break;
+			}
+			running[i] = new Thread(() -> w.search(budget, deadline));
+			running[i].start();
+		}
+		for (Thread t : running) {
+			if (t == null)
+				continue;
+			try {
+				t.join();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+
+		// add up the root visits of each move over the workers
+		long[] visits = new long[9];
+		long rollouts = 0;
+		for (Worker w : workers) {
+			w.addRootVisits(visits);
+			rollouts += w.rollouts;
+		}
+		int best = -1;
+		for (int k = 0; k < 9; k++)
+			if ((g.emptyCells() & (1 << k)) != 0 && (best < 0 || visits[k] > visits[best]))
+				best = k;
+
+		lastRollouts = rollouts;
+		lastNanos = System.nanoTime() - start;
+		totalRollouts += lastRollouts;
+		totalNanos += lastNanos;
+		return new Move(g.whoseTurn, best / 3, best % 3);
+	}
+
+	/**
+	 * @return the number of playouts of the last {@link #getMove} call
+	 */
+	public synchronized long getLastRollouts() {
+		return lastRollouts;
+	}
+
+	/**
+	 * @return the playouts per second of the last {@link #getMove} call
+	 */
+	public synchronized double getLastRolloutsPerSecond() {
+		return (lastNanos == 0) ? 0.0 : lastRollouts * 1e9 / lastNanos;
+	}
+
+	/**
+	 * @return the number of playouts over all {@link #getMove} calls
+	 */
+	public synchronized long getTotalRollouts() {
+		return totalRollouts;
+	}
+
+	/**
+	 * @return the playouts per second over all {@link #getMove} calls
+	 */
+	public synchronized double getRolloutsPerSecond() {
+		return (totalNanos == 0) ? 0.0 : totalRollouts * 1e9 / totalNanos;
+	}
+
+	/**
+	 * One worker's search tree, as arrays indexed by node. Node 0 is the root. The
+	 * children of a node are a linked list: {@code firstChild}, then
+	 * {@code nextSibling}.
+	 */
+	private static class Worker {
+		final int[] xBoard;
+		final int[] oBoard;
+		final boolean[] xToMove;
+		final byte[] status;
+		final byte[] cell;
+		final int[] untried;
+		final int[] firstChild;
+		final int[] nextSibling;
+		final int[] visits;
+
+		/**
+		 * the total score of the playouts through each node, for the player who
+		 * moved into it: 1 for a win, 0.5 for a draw
+		 */
+		final double[] score;
+
+		final int[] path;
+		final Random random;
+		int size;
+		long rollouts;
+
+		Worker(int capacity, Random random) {
+			xBoard = new int[capacity];
+			oBoard = new int[capacity];
+			xToMove = new boolean[capacity];
+			status = new byte[capacity];
+			cell = new byte[capacity];
+			untried = new int[capacity];
+			firstChild = new int[capacity];
+			nextSibling = new int[capacity];
+			visits = new int[capacity];
+			score = new double[capacity];
+			path = new int[10];
+			this.random = random;
+		}
+
+		void reset(int x, int o, boolean xMoves) {
+			size = 0;
+			rollouts = 0;
+			add(x, o, xMoves, -1);
+		}
+
+		/**
+		 * Adds a node for the game with boards {@code x} and {@code o}, reached by
+		 * playing {@code k}.
+		 */
+		private int add(int x, int o, boolean xMoves, int k) {
+			int n = size++;
+			xBoard[n] = x;
+			oBoard[n] = o;
+			xToMove[n] = xMoves;
+			status[n] = (byte) Game.evaluate(x, o);
+			cell[n] = (byte) k;
+			untried[n] = (status[n] == Game.ONGOING) ? ~(x | o) & Game.FULL_BOARD : 0;
+			firstChild[n] = -1;
+			nextSibling[n] = -1;
+			visits[n] = 0;
+			score[n] = 0.0;
+			return n;
+		}
+
+		void search(int budget, long deadline) {
+			for (int i = 0; i < budget; i++) {
+				// checking the clock every iteration would cost more than the playout
+				if ((i & 63) == 0 && System.nanoTime() >= deadline)
+					break;
+				iterate();
+			}
+		}
+
+		/**
+		 * One iteration: selection, expansion, playout and back-up.
+		 */
+		private void iterate() {
+			int node = 0;
+			int depth = 0;
+			path[depth++] = node;
+
+			// selection: follow UCT while every move of the node has a child
+			while (status[node] == Game.ONGOING && untried[node] == 0 && firstChild[node] >= 0) {
+				node = select(node);
+				path[depth++] = node;
+			}
+
+			// expansion: add one random untried move, if there is room
+			if (untried[node] != 0 && size < xBoard.length) {
+				int k = randomCell(untried[node]);
+				untried[node] &= ~(1 << k);
+				int bit = 1 << k;
+				int child = xToMove[node] ? add(xBoard[node] | bit, oBoard[node], false, k)
+						: add(xBoard[node], oBoard[node] | bit, true, k);
+				nextSibling[child] = firstChild[node];
+				firstChild[node] = child;
+				node = child;
+				path[depth++] = node;
+			}
+
+			int result = playout(xBoard[node], oBoard[node], xToMove[node]);
+			rollouts++;
+
+			// back-up: each node is scored for the player who moved into it
+			for (int i = 0; i < depth; i++) {
+				int n = path[i];
+				visits[n]++;
+				if (result == Game.DRAW)
+					score[n] += 0.5;
+				else if ((result == Game.X_WON) == !xToMove[n])
+					score[n] += 1.0;
+			}
+		}
+
+		/**
+		 * @return the child of {@code node} with the highest upper confidence bound
+		 */
+		private int select(int node) {
+			double logVisits = Math.log(visits[node]);
+			int best = -1;
+			double bestValue = Double.NEGATIVE_INFINITY;
+			for (int c = firstChild[node]; c >= 0; c = nextSibling[c]) {
+				double value = score[c] / visits[c] + EXPLORATION * Math.sqrt(logVisits / visits[c]);
+				if (value > bestValue) {
+					bestValue = value;
+					best = c;
+				}
+			}
+			return best;
+		}
+
+		/**
+		 * Plays the game out with uniformly random moves, on the board masks.
+		 *
+		 * @return the final state of the game
+		 */
+		private int playout(int x, int o, boolean xMoves) {
+			int state = Game.evaluate(x, o);
+			while (state == Game.ONGOING) {
+				int bit = 1 << randomCell(~(x | o) & Game.FULL_BOARD);
+				if (xMoves)
+					x |= bit;
+				else
+					o |= bit;
+				xMoves = !xMoves;
+				state = Game.evaluate(x, o);
+			}
+			return state;
+		}
+
+		/**
+		 * @return one of the cells of {@code cells}, uniformly at random
+		 */
+		private int randomCell(int cells) {
+			for (int r = random.nextInt(Integer.bitCount(cells)); r > 0; r--)
+				cells &= cells - 1;
+			return Integer.numberOfTrailingZeros(cells);
+		}
+
+		/**
+		 * Adds the visit count of each child of the root to {@code visits}, by cell.
+		 */
+		void addRootVisits(long[] visits) {
+			for (int c = firstChild[0]; c >= 0; c = nextSibling[c])
+				visits[cell[c]] += this.visits[c];
+		}
+	}
+
+}
@@ -0,0 +1,243 @@
+package ticTacToe;
+
+/**
+ * A model of the opponent used by a {@link TTTMDP}: the probability of each of
+ * its replies in a given game. {@link TTTMDP#generateTransitions} turns this
+ * distribution into the transitions of the MDP, so a planning agent can plan
+ * against a realistic opponent rather than a uniformly random one.
+ *
+ * Models are known exactly for the policies in this package, see
+ * {@link #of(Policy)}; {@link #mixture} combines several into a stochastic
+ * opponent.
+ *
+ */
+public abstract class OpponentModel {
+
+	/**
+	 * Fills in the probability of the player whose turn it is playing each cell,
+	 * in the ongoing game with board masks {@code xBoard} and {@code oBoard} (see
+	 * {@link Game#cell}): {@code prob[k]} for cell {@code k}. Occupied cells get 0,
+	 * and the probabilities of the empty cells add up to 1.
+	 *
+	 * @param xBoard
+	 * @param oBoard
+	 * @param xToMove whether it is X's turn
+	 * @param prob    an array of length 9
+	 */
+	public abstract void replyDistribution(int xBoard, int oBoard, boolean xToMove, double[] prob);
+
+	/**
+	 * Like {@link #replyDistribution(int, int, boolean, double[])}, for the ongoing
+	 * game {@code g}, which is left unchanged.
+	 */
+	public void replyDistribution(Game g, double[] prob) {
+		replyDistribution(g.xBoard, g.oBoard, g.whoseTurn.getName() == 'X', prob);
+	}
+
+	/**
+	 * Whether the opponent plays the same in symmetric games: its distribution in
+	 * a rotated or reflected game is the rotated or reflected distribution. Only
+	 * then can a {@link CompiledMDP} merge symmetric games into one state.
+	 * Opponents that break ties by cell order, like {@link AggressivePolicy} and
+	 * {@link DefensivePolicy}, are not symmetric.
+	 *
+	 * @return false, unless overridden
+	 */
+	public boolean isSymmetric() {
+		return false;
+	}
+
+	/**
+	 * @return the reply distribution in {@code g}, as a new array indexed by cell
+	 */
+	public double[] replyDistribution(Game g) {
+		double[] prob = new double[9];
+		replyDistribution(g, prob);
+		return prob;
+	}
+
+	/**
+	 * A uniformly random opponent, like {@link RandomPolicy}. This is the opponent
+	 * a {@link TTTMDP} assumes by default.
+	 */
+	public static final OpponentModel UNIFORM = new OpponentModel() {
+		@Override
+		public void replyDistribution(int xBoard, int oBoard, boolean xToMove, double[] prob) {
+			uniform(~(xBoard | oBoard) & Game.FULL_BOARD, prob);
+		}
+
+		@Override
+		public boolean isSymmetric() {
+			return true;
+		}
+	};
+
+	/**
+	 * The exact model of {@link AggressivePolicy}: the first move (in cell order)
+	 * that wins the game, otherwise a uniformly random move. See
+	 * {@link #aggressive()}.
+	 */
+	private static final OpponentModel AGGRESSIVE = new OpponentModel() {
+		@Override
+		public void replyDistribution(int xBoard, int oBoard, boolean xToMove, double[] prob) {
+			int empty = ~(xBoard | oBoard) & Game.FULL_BOARD;
+			for (int k = 0; k < 9; k++) {
+				int bit = 1 << k;
+				if ((empty & bit) == 0)
+					continue;
+				int state = xToMove ? Game.evaluate(xBoard | bit, oBoard) : Game.evaluate(xBoard, oBoard | bit);
+				if (state == Game.X_WON || state == Game.O_WON) {
+					only(k, prob);
+					return;
+				}
+			}
+			uniform(empty, prob);
+		}
+	};
+
+	/**
+	 * The exact model of {@link DefensivePolicy}: the first move (in cell order)
+	 * that blocks a win of the other player, otherwise a uniformly random move. See
+	 * {@link #defensive()}.
+	 */
+	private static final OpponentModel DEFENSIVE = new OpponentModel() {
+		@Override
+		public void replyDistribution(int xBoard, int oBoard, boolean xToMove, double[] prob) {
+			int empty = ~(xBoard | oBoard) & Game.FULL_BOARD;
+			for (int k = 0; k < 9; k++) {
+				int bit = 1 << k;
+				if ((empty & bit) == 0)
+					continue;
+				// the other player's piece in cell k
+				int state = xToMove ? Game.evaluate(xBoard, oBoard | bit) : Game.evaluate(xBoard | bit, oBoard);
+				if (state == Game.X_WON || state == Game.O_WON) {
+					only(k, prob);
+					return;
+				}
+			}
+			uniform(empty, prob);
+		}
+	};
+
+	/**
+	 * @return the exact model of {@link AggressivePolicy}: the first move (in cell
+	 *         order) that wins the game, otherwise a uniformly random move. The
+	 *         model has no state, so this is always the same instance, and MDPs
+	 *         built with it have the same dynamics (see {@link CompiledMDP})
+	 */
+	public static OpponentModel aggressive() {
+		return AGGRESSIVE;
+	}
+
+	/**
+	 * @return the exact model of {@link DefensivePolicy}: the first move (in cell
+	 *         order) that blocks a win of the other player, otherwise a uniformly
+	 *         random move. Always the same instance, like {@link #aggressive()}
+	 */
+	public static OpponentModel defensive() {
+		return DEFENSIVE;
+	}
+
+	/**
+	 * @return a model of a deterministic policy: the opponent always plays
+	 *         {@code p.getMove(g)}. If {@code p} has no move for a game, the
+	 *         opponent plays uniformly at random there.
+	 */
+	public static OpponentModel deterministic(final Policy p) {
+		return new OpponentModel() {
+			@Override
+			public void replyDistribution(int xBoard, int oBoard, boolean xToMove, double[] prob) {
+				replyDistribution(Game.fromBoards(xBoard, oBoard, xToMove ? 'X' : 'O'), prob);
+			}
+
+			@Override
+			public void replyDistribution(Game g, double[] prob) {
+				Move m = p.getMove(g);
+				if (m == null || !g.isLegal(m))
+					uniform(g.emptyCells(), prob);
+				else
+					only(Game.cell(m.x, m.y), prob);
+			}
+		};
+	}
+
+	/**
+	 * @return the model of policy {@code p}: the exact models of
+	 *         {@link RandomPolicy}, {@link AggressivePolicy} and
+	 *         {@link DefensivePolicy}, or {@link #deterministic} for any other
+	 *         policy
+	 */
+	public static OpponentModel of(Policy p) {
+		if (p instanceof RandomPolicy)
+			return UNIFORM;
+		if (p instanceof AggressivePolicy)
+			return aggressive();
+		if (p instanceof DefensivePolicy)
+			return defensive();
+		return deterministic(p);
+	}
+
+	/**
+	 * @return a stochastic opponent that, before each move, picks model
+	 *         {@code models[i]} with probability {@code weights[i]} (normalised, so
+	 *         the weights need not add up to 1)
+	 */
+	public static OpponentModel mixture(double[] weights, final OpponentModel... models) {
+		if (weights.length != models.length || models.length == 0)
+			throw new IllegalArgumentException("Need one weight per model");
+		double total = 0;
+		for (double w : weights) {
+			if (w < 0)
+				throw new IllegalArgumentException("Weights can't be negative");
+			total += w;
+		}
+		if (total <= 0)
+			throw new IllegalArgumentException("Weights can't all be zero");
+
+		final double[] normalised = new double[weights.length];
+		for (int i = 0; i < weights.length; i++)
+			normalised[i] = weights[i] / total;
+
+		return new OpponentModel() {
+			@Override
+			public boolean isSymmetric() {
+				for (OpponentModel model : models)
+					if (!model.isSymmetric())
+						return false;
+				return true;
+			}
+
+			@Override
+			public void replyDistribution(int xBoard, int oBoard, boolean xToMove, double[] prob) {
+				double[] part = new double[9];
+				for (int k = 0; k < 9; k++)
+					prob[k] = 0.0;
+				for (int i = 0; i < models.length; i++) {
+					if (normalised[i] == 0)
+						continue;
+					models[i].replyDistribution(xBoard, oBoard, xToMove, part);
+					for (int k = 0; k < 9; k++)
+						prob[k] += normalised[i] * part[k];
+				}
+			}
+		};
+	}
+
+	/**
+	 * The same probability for each cell of {@code empty}, 0 for the others.
+	 */
+	static void uniform(int empty, double[] prob) {
+		double p = (double) 1 / Integer.bitCount(empty);
+		for (int k = 0; k < 9; k++)
+			prob[k] = ((empty & (1 << k)) != 0) ? p : 0.0;
+	}
+
+	/**
+	 * Probability 1 for cell {@code cell}, 0 for the others.
+	 */
+	static void only(int cell, double[] prob) {
+		for (int k = 0; k < 9; k++)
+			prob[k] = (k == cell) ? 1.0 : 0.0;
+	}
+
+}
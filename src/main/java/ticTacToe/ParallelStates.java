@@ -0,0 +1,117 @@
+package ticTacToe;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.IntConsumer;
+
+/**
+ * Runs work over the states {@code [0, n)} of a {@link CompiledMDP} in parallel
+ * on a {@link ForkJoinPool}: the range is split in halves until the pieces are
+ * at most {@link #GRAIN} states, each piece is processed by a
+ * {@link RangeFunction}, and the results of the pieces are reduced with max or
+ * sum. Work without a result is run on each state with {@link #forEach}. Used by
+ * the parallel modes of the planning agents, where each state's backup only
+ * reads shared arrays and writes its own entry of an output array.
+ *
+ */
+final class ParallelStates {
+
+	/**
+	 * Pieces of at most this many states are not split further.
+	 */
+	static final int GRAIN = 128;
+
+	/**
+	 * The work done on one piece, states {@code from} (inclusive) to {@code to}
+	 * (exclusive).
+	 */
+	interface RangeFunction {
+		double apply(int from, int to);
+	}
+
+	private ParallelStates() {
+	}
+
+	/**
+	 * @return the largest of the results of {@code f} over the pieces of
+	 *         {@code [0, n)}, or 0 if {@code n} is 0
+	 */
+	static double max(ForkJoinPool pool, int n, RangeFunction f) {
+		return pool.invoke(new RangeTask(f, 0, n, false));
+	}
+
+	/**
+	 * @return the sum of the results of {@code f} over the pieces of
+	 *         {@code [0, n)}
+	 */
+	static double sum(ForkJoinPool pool, int n, RangeFunction f) {
+		return pool.invoke(new RangeTask(f, 0, n, true));
+	}
+
+	/**
+	 * Runs {@code body} on every state of {@code [0, n)}, split into pieces the
+	 * same way as {@link #max}, and returns when all of them are done.
+	 */
+	static void forEach(ForkJoinPool pool, int n, IntConsumer body) {
+		pool.invoke(new ForEachTask(body, 0, n));
+	}
+
+	private static class ForEachTask extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private final IntConsumer body;
+		private final int from;
+		private final int to;
+
+		ForEachTask(IntConsumer body, int from, int to) {
+			this.body = body;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from <= GRAIN) {
+				for (int s = from; s < to; s++)
+					body.accept(s);
+				return;
+			}
+
+			int mid = (from + to) >>> 1;
+			invokeAll(new ForEachTask(body, from, mid), new ForEachTask(body, mid, to));
+		}
+	}
+
+	private static class RangeTask extends RecursiveTask<Double> {
+
+		private static final long serialVersionUID = 1L;
+
+		private final RangeFunction f;
+		private final int from;
+		private final int to;
+		private final boolean sum;
+
+		RangeTask(RangeFunction f, int from, int to, boolean sum) {
+			this.f = f;
+			this.from = from;
+			this.to = to;
+			this.sum = sum;
+		}
+
+		@Override
+		protected Double compute() {
+			if (to - from <= GRAIN)
+				return (to > from) ? f.apply(from, to) : 0.0;
+
+			int mid = (from + to) >>> 1;
+			RangeTask left = new RangeTask(f, from, mid, sum);
+			left.fork();
+			double right = new RangeTask(f, mid, to, sum).compute();
+			double l = left.join();
+			return sum ? l + right : Math.max(l, right);
+		}
+	}
+
+}
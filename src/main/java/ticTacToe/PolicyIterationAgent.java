@@ -1,9 +1,10 @@
 package ticTacToe;
 
-import java.util.Date;
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * A policy iteration agent. You should implement the following methods:
@@ -29,15 +30,19 @@ import java.util.Random;
 public class PolicyIterationAgent extends Agent {
 
 	/**
-	 * This map is used to store the values of states according to the current
-	 * policy (policy evaluation).
+	 * This array is used to store the values of states according to the current
+	 * policy (policy evaluation), indexed by the state numbers of {@link #model}.
+	 * Like {@link #curPolicy}, it only has canonical states (see
+	 * {@link Game#canonical()}).
 	 */
-	HashMap<Game, Double> policyValues = new HashMap<Game, Double>();
+	double[] policyValues;
 
 	/**
-	 * This stores the current policy as a map from {@link Game}s to {@link Move}.
+	 * This stores the current policy as an action of {@link #model} for each
+	 * state, or -1 for terminal states. Symmetric games are covered through a
+	 * {@link SymmetricPolicy}.
 	 */
-	HashMap<Game, Move> curPolicy = new HashMap<Game, Move>();
+	int[] curPolicy;
 
 	double discount = 0.9;
 
@@ -46,6 +51,106 @@ public class PolicyIterationAgent extends Agent {
 	 */
 	TTTMDP mdp;
 
+	/**
+	 * The {@link #mdp} compiled into flat arrays, which policy evaluation and
+	 * improvement sweep. See {@link TTTMDP#compile()}
+	 */
+	CompiledMDP model;
+
+	/**
+	 * How {@link #evaluatePolicy} computes the values of the current policy:
+	 * <ul>
+	 * <li>{@code ITERATIVE}: repeated in-place sweeps until the largest change is
+	 * less than {@code delta}.</li>
+	 * <li>{@code TOPOLOGICAL}: a single pass over the states from full boards back
+	 * to the empty board (see {@link CompiledMDP#reverseTopologicalOrder()}), which
+	 * gives the exact values since the state graph is acyclic. {@code delta} is
+	 * not used.</li>
+	 * </ul>
+	 */
+	public enum Evaluation {
+		ITERATIVE, TOPOLOGICAL
+	}
+
+	/**
+	 * The policy evaluation method used by {@link #evaluatePolicy}
+	 */
+	Evaluation evaluation = Evaluation.ITERATIVE;
+
+	/**
+	 * For modified policy iteration: the maximum number of
+	 * {@link Evaluation#ITERATIVE} evaluation sweeps per round. 0 (the default)
+	 * means evaluating until the values converge.
+	 */
+	int evaluationSweeps = 0;
+
+	/**
+	 * For modified policy iteration: whether a round's evaluation may stop before
+	 * {@link #evaluationSweeps} sweeps, once the largest change is less than
+	 * {@link #delta}.
+	 */
+	boolean earlyTermination = true;
+
+	/**
+	 * Whether {@link #improvePolicy} runs over ranges of states in parallel on
+	 * {@link #pool}
+	 */
+	boolean parallelImprovement = false;
+
+	/**
+	 * The pool used for parallel policy improvement
+	 */
+	ForkJoinPool pool = ForkJoinPool.commonPool();
+
+	/**
+	 * Statistics of one round (evaluation plus improvement) of
+	 * {@link PolicyIterationAgent#train}.
+	 */
+	public static class RoundStats {
+		/**
+		 * the number of states whose move was changed by the improvement step
+		 */
+		public final int policyChanges;
+		/**
+		 * the number of evaluation sweeps; 1 for {@link Evaluation#TOPOLOGICAL}
+		 */
+		public final int evaluationSweeps;
+		/**
+		 * the largest change in a value during the last evaluation sweep; 0 for the
+		 * exact {@link Evaluation#TOPOLOGICAL} evaluation
+		 */
+		public final double evaluationResidual;
+		/**
+		 * wall time of the round, in nanoseconds
+		 */
+		public final long nanos;
+
+		RoundStats(int policyChanges, int evaluationSweeps, double evaluationResidual, long nanos) {
+			this.policyChanges = policyChanges;
+			this.evaluationSweeps = evaluationSweeps;
+			this.evaluationResidual = evaluationResidual;
+			this.nanos = nanos;
+		}
+
+		public String toString() {
+			return "changes=" + policyChanges + " sweeps=" + evaluationSweeps + " residual=" + evaluationResidual
+					+ " time=" + (nanos / 1000) + "us";
+		}
+	}
+
+	/**
+	 * the statistics of each round of the last {@link #train()}
+	 */
+	List<RoundStats> rounds = new ArrayList<RoundStats>();
+
+	/**
+	 * set by the last {@link #evaluatePolicy} and {@link #improvePolicy} calls, for
+	 * {@link #rounds}
+	 */
+	private int lastEvaluationSweeps;
+	private double lastEvaluationResidual;
+	private int lastPolicyChanges;
+
 	/**
 	 * loads the policy from file if one exists. Policies should be stored in .pol
 	 * files directly under the project folder.
@@ -85,6 +190,65 @@ public class PolicyIterationAgent extends Agent {
 		train();
 	}
 
+	/**
+	 * Use this constructor to choose how policies are evaluated, see
+	 * {@link Evaluation}, with the default MDP parameters.
+	 * 
+	 * @param discountFactor
+	 * @param evaluation
+	 */
+	public PolicyIterationAgent(double discountFactor, Evaluation evaluation) {
+
+		this.discount = discountFactor;
+		this.evaluation = evaluation;
+		this.mdp = new TTTMDP();
+		initValues();
+		initRandomPolicy();
+		train();
+	}
+
+	/**
+	 * Use this constructor to choose how policies are evaluated, and whether the
+	 * improvement step runs in parallel (see {@link #improvePolicyInParallel()}).
+	 * 
+	 * @param discountFactor
+	 * @param evaluation
+	 * @param parallelImprovement
+	 */
+	public PolicyIterationAgent(double discountFactor, Evaluation evaluation, boolean parallelImprovement) {
+
+		this.discount = discountFactor;
+		this.evaluation = evaluation;
+		this.parallelImprovement = parallelImprovement;
+		this.mdp = new TTTMDP();
+		initValues();
+		initRandomPolicy();
+		train();
+	}
+
+	/**
+	 * Use this constructor for modified policy iteration: each round evaluates the
+	 * current policy with at most {@code evaluationSweeps} sweeps, instead of
+	 * evaluating it until convergence, before improving it.
+	 * 
+	 * @param discountFactor
+	 * @param evaluationSweeps the maximum number of evaluation sweeps per round
+	 * @param earlyTermination whether to stop a round's evaluation as soon as the
+	 *                         largest change is less than {@link #delta}
+	 */
+	public PolicyIterationAgent(double discountFactor, int evaluationSweeps, boolean earlyTermination) {
+
+		if (evaluationSweeps < 1)
+			throw new IllegalArgumentException("At least one evaluation sweep per round is needed");
+		this.discount = discountFactor;
+		this.evaluationSweeps = evaluationSweeps;
+		this.earlyTermination = earlyTermination;
+		this.mdp = new TTTMDP();
+		initValues();
+		initRandomPolicy();
+		train();
+	}
+
 	/**
 	 * Use this constructor to set the various parameters of the Tic-Tac-Toe MDP
 	 * 
@@ -104,17 +268,16 @@ public class PolicyIterationAgent extends Agent {
 	}
 
 	/**
-	 * Initialises the {@link #policyValues} map, and sets the initial value of all
-	 * states to 0
-	 * (V0 under some policy pi ({@link #curPolicy} from the lectures). Uses
-	 * {@link Game#inverseHash} and {@link Game#generateAllValidGames(char)} to do
-	 * this.
+	 * Compiles the {@link #mdp}, initialises the {@link #policyValues} array, and
+	 * sets the initial value of all (canonical) states to 0
+	 * (V0 under some policy pi ({@link #curPolicy} from the lectures).
 	 * 
 	 */
 	public void initValues() {
-		List<Game> allGames = Game.generateAllValidGames('X');// all valid games where it is X's turn, or it's terminal.
-		for (Game g : allGames)
-			this.policyValues.put(g, 0.0);
+		// the states are all valid canonical games where it is X's turn, or it's
+		// terminal.
+		this.model = mdp.compile();
+		this.policyValues = new double[model.numStates()];
 
 	}
 
@@ -122,33 +285,28 @@ public class PolicyIterationAgent extends Agent {
 	 * You should implement this method to initially generate a random policy, i.e.
 	 * fill the {@link #curPolicy} for every state. Take care that the moves you
 	 * choose
-	 * for each state ARE VALID. You can use the {@link Game#getPossibleMoves()}
-	 * method to get a list of valid moves and choose
-	 * randomly between them.
+	 * for each state ARE VALID: here they are picked among the actions of
+	 * {@link #model} for the state.
 	 */
 	public void initRandomPolicy() {
 		// creating a random object for selecting the randpm moves
 		Random random = new Random();
 
-		// getting all valid game states where it iss Xs turn or terminal state(end
-		// state)
-		List<Game> allGames = Game.generateAllValidGames('X');
+		this.model = mdp.compile();
+		this.curPolicy = new int[model.numStates()];
 
-		// looping through each game state
-		for (Game state : allGames) {
+		// looping through each state
+		for (int state = 0; state < model.numStates(); state++) {
 
-			// skipping termianal state(moves are not needed for end state)
-			if (state.isTerminal()) {
+			// termianal states have no move (-1)
+			if (model.isTerminal(state)) {
+				curPolicy[state] = -1;
 				continue;
 			}
-			// getting all possible moves for the current state
-			List<Move> possibleMoves = state.getPossibleMoves();
-
-			// randomly selecting one move from those possible moves
-			Move randomMove = possibleMoves.get(random.nextInt(possibleMoves.size()));
-
-			// mapping current gmae state to the randomly selected move in curPolicy
-			curPolicy.put(state, randomMove);
+			// randomly selecting one of the actions of the current state
+			int first = model.actionStart[state];
+			int count = model.actionStart[state + 1] - first;
+			curPolicy[state] = first + random.nextInt(count);
 		}
 	}
 
@@ -157,70 +315,49 @@ public class PolicyIterationAgent extends Agent {
 	 * than {@code delta}, in other words
 	 * until the values under the currrent policy converge. After running this
 	 * method,
-	 * the {@link PolicyIterationAgent#policyValues} map should contain the values
+	 * the {@link PolicyIterationAgent#policyValues} array should contain the values
 	 * of each reachable state under the current policy.
-	 * You should use the {@link TTTMDP} {@link PolicyIterationAgent#mdp} provided
-	 * to do this.
+	 * This sweeps the {@link TTTMDP} {@link PolicyIterationAgent#mdp} provided,
+	 * compiled into {@link #model}. With {@link Evaluation#TOPOLOGICAL} evaluation
+	 * the values are computed exactly in one pass instead, and {@code delta} is
+	 * not used. With {@link #evaluationSweeps} set (modified policy iteration), at
+	 * most that many sweeps are done.
 	 *
 	 * @param delta
 	 */
 	protected void evaluatePolicy(double delta) {
+		if (evaluation == Evaluation.TOPOLOGICAL) {
+			evaluatePolicyExactly();
+			lastEvaluationSweeps = 1;
+			lastEvaluationResidual = 0.0;
+			return;
+		}
+
 		// var to calculate maximum change in values
 		double maximumChange;
+		int sweeps = 0;
 
 		do {
 			// setting max change to 0 at the start of every iteration
 			maximumChange = 0;
 
-			// looping through all game states in current policy
-			for (Game state : curPolicy.keySet()) {
+			// looping through all states
+			for (int state = 0; state < model.numStates(); state++) {
 
 				// skipping termianl states(moves are not needed for eavluation)
-				if (state == null || state.isTerminal()) {
-					continue;
-				}
-
-				// geting current move
-				Move currentMove = curPolicy.get(state);
-				if (currentMove == null) {
-
-					// skipping if the move is null
-					System.out.println("Warning: Null move for state: " + state);
-					continue;
-				}
-				// initializing expected value for this state to zero
-				double expectedValue = 0.0;
-
-				// generating possible trasitions for current state and current move
-				List<TransitionProb> transitions = mdp.generateTransitions(state, currentMove);
-
-				// if transitions are not there(null) give warning or skip if transitions are
-				// there
-				if (transitions == null || transitions.isEmpty()) {
-					System.out.println("Warning: No transitions found for state: " + state + ", move: " + currentMove);
+				if (curPolicy[state] < 0) {
 					continue;
 				}
-				// looping through transiitions for current state and current move
-				for (TransitionProb transition : transitions) {
-
-					// getting the next state
-					Game nextState = transition.outcome.sPrime;
-
-					// getting reward for the transition
-					double reward = transition.outcome.localReward;
 
-					// getting probability for the transition
-					double probability = transition.prob;
-
-					// calculating the value of this transition and adding it to expectedValue
-					expectedValue += probability * (reward + discount * policyValues.get(nextState));
-				}
+				// the expected value of the current move: sum of prob*(reward+discount*value)
+				// over its transitions
+				double expectedValue = model.qValue(curPolicy[state], policyValues, discount);
 
 				// calculating abs value for the new and old value
-				double change = Math.abs(expectedValue - policyValues.get(state));
+				double change = Math.abs(expectedValue - policyValues[state]);
 
-				// updating the expected value in policyValue map
-				policyValues.put(state, expectedValue);
+				// updating the expected value in policyValues (in place)
+				policyValues[state] = expectedValue;
 
 				// if the change is greater than maximum change then we update maximumChange
 				// with greater one
@@ -229,10 +366,30 @@ public class PolicyIterationAgent extends Agent {
 				}
 			}
 
+			sweeps++;
+
+			// in modified policy iteration, stop after evaluationSweeps sweeps (or as
+			// soon as the values converge, with early termination)
+			if (evaluationSweeps > 0 && (sweeps >= evaluationSweeps || (earlyTermination && maximumChange < delta)))
+				break;
 		}
 		// keep doing till the maximum change value is less than delta
 		while (maximumChange >= delta);
 
+		lastEvaluationSweeps = sweeps;
+		lastEvaluationResidual = maximumChange;
+	}
+
+	/**
+	 * Evaluates the current policy exactly, in a single pass: the states are
+	 * visited in reverse topological order, so the values of all successors of a
+	 * state are final when its value is computed.
+	 */
+	private void evaluatePolicyExactly() {
+		for (int state : model.reverseTopologicalOrder()) {
+			if (curPolicy[state] >= 0)
+				policyValues[state] = model.qValue(curPolicy[state], policyValues, discount);
+		}
 	}
 
 	/**
@@ -240,7 +397,7 @@ public class PolicyIterationAgent extends Agent {
 	 * {@link PolicyIterationAgent#evaluatePolicy} train method to improve the
 	 * current policy according to
 	 * {@link PolicyIterationAgent#policyValues}. You will need to do a single step
-	 * of expectimax from each game (state) key in
+	 * of expectimax from each state of
 	 * {@link PolicyIterationAgent#curPolicy}
 	 * to look for a move/action that potentially improves the current policy.
 	 * 
@@ -248,84 +405,70 @@ public class PolicyIterationAgent extends Agent {
 	 *         improvement, i.e. the policy already returned the optimal actions.
 	 */
 	protected boolean improvePolicy() {
+		if (parallelImprovement)
+			return improvePolicyInParallel();
+
 		boolean policyImproved = false;
+		int changes = 0;
 
-		// looping through all the states in current policy
-		for (Game state : curPolicy.keySet()) {
+		// looping through all the states
+		for (int state = 0; state < model.numStates(); state++) {
 
 			// skipping terminal states
-			if (state == null || state.isTerminal()) {
+			if (curPolicy[state] < 0) {
 				continue;
 			}
 
-			// getting the current best move for this state
-			Move currentBestMove = curPolicy.get(state);
-
-			// skipping if the move is null
-			if (currentBestMove == null) {
-				System.out.println("Warning: Null current best move for state: " + state);
-				continue;
-			}
-
-			// intializing best value to a low value to compare it
-			double bestValue = -10000;
-
-			// will store the best move for this state
-			Move bestMove = null;
-
-			// loopping through all possible moves for the current state
-			for (Move move : state.getPossibleMoves()) {
+			// the move with the highest expected value (the first one on ties)
+			int bestMove = model.bestAction(state, policyValues, discount);
 
-				// skipping if move is null
-				if (move == null) {
-					System.out.println("Warning: Null move for state: " + state);
-					continue;
-				}
-				// initializing the expected value for this move to zero
-				double expectedValue = 0.0;
-
-				// getting all transitions (next states, rewards, probalbilities) for this move
-				List<TransitionProb> transitions = mdp.generateTransitions(state, move);
-
-				// skippign if the transitions are null
-				if (transitions == null || transitions.isEmpty()) {
-					System.out.println("Warning: No transitions found for state: " + state + ", move: " + move);
-					continue;
-				}
-
-				for (TransitionProb transition : transitions) {
-
-					// getting the next state from this transition
-					Game nextState = transition.outcome.sPrime;
-
-					// getting reward and prob for this transition
-					double reward = transition.outcome.localReward;
-					double probability = transition.prob;
-
-					// updating the expected value for this move based on reward, prob etc
-					expectedValue += probability * (reward + discount * policyValues.get(nextState));
-				}
-
-				// if the expected value is greater than the best value we have update the best
-				// value to this expected value and best move to this move
-				if (expectedValue > bestValue) {
-					bestValue = expectedValue;
-					bestMove = move;
-				}
-			}
 			// if the best move is different than the current best move in curPolicy then
 			// update the policy to use the new best move
-			if (bestMove != null && !bestMove.equals(currentBestMove)) {
-				curPolicy.put(state, bestMove);
+			if (bestMove != curPolicy[state]) {
+				curPolicy[state] = bestMove;
 
 				/// to show policy is improved set it to true
 				policyImproved = true;
+				changes++;
 			}
 		}
+		lastPolicyChanges = changes;
 		/// return the improved policy bool
 		return policyImproved;
 	}
 
+	/**
+	 * The improvement step, with the states split into ranges that are improved in
+	 * parallel on {@link #pool}. The best move of a state only depends on
+	 * {@link #policyValues}, which is not written here, so the ranges are
+	 * independent: each writes the moves of its own states into a new policy
+	 * array and returns how many of them changed, and the counts are summed. The
+	 * new array then replaces {@link #curPolicy}. The result is the same as the
+	 * sequential {@link #improvePolicy}.
+	 * 
+	 * @return true if the policy improved
+	 */
+	private boolean improvePolicyInParallel() {
+		final int[] oldPolicy = curPolicy;
+		final int[] newPolicy = new int[oldPolicy.length];
+		final double[] values = policyValues;
+
+		double changes = ParallelStates.sum(pool, newPolicy.length, (from, to) -> {
+			int changed = 0;
+			for (int state = from; state < to; state++) {
+				// terminal states keep -1
+				newPolicy[state] = (oldPolicy[state] < 0) ? -1 : model.bestAction(state, values, discount);
+				if (newPolicy[state] != oldPolicy[state])
+					changed++;
+			}
+			return changed;
+		});
+
+		curPolicy = newPolicy;
+		lastPolicyChanges = (int) changes;
+		return lastPolicyChanges > 0;
+	}
+
 	/**
 	 * The (convergence) delta
 	 */
@@ -336,26 +479,71 @@ public class PolicyIterationAgent extends Agent {
 	 * until convergence (i.e. until the policy
 	 * no longer changes), and so uses your
 	 * {@link PolicyIterationAgent#evaluatePolicy} and
-	 * {@link PolicyIterationAgent#improvePolicy} methods.
+	 * {@link PolicyIterationAgent#improvePolicy} methods. In modified policy
+	 * iteration the values of the final policy must also have converged, since a
+	 * truncated evaluation can leave the policy unchanged for a round before it is
+	 * optimal. Statistics for each round are kept in {@link #rounds}.
 	 */
 	public void train() {
 		// to check if policy changed during iterarion
 		boolean policyChanged;
+		rounds.clear();
 
 		do {
+			long start = System.nanoTime();
+
 			// doing evaluatePolicy(policy evaluation)
 			evaluatePolicy(delta);
 
 			// doing improvePolicy(policy improvement)
 			policyChanged = improvePolicy();
 
+			rounds.add(new RoundStats(lastPolicyChanges, lastEvaluationSweeps, lastEvaluationResidual,
+					System.nanoTime() - start));
 		}
-		// repeat till the policy is not changed
-		while (policyChanged);
+		// repeat till the policy is not changed (and, in modified policy iteration, its
+		// values have converged)
+		while (policyChanged || lastEvaluationResidual >= delta);
+
+		// converting the updated curPolicy array into a Policy object that also covers
+		// symmetric states
+		this.policy = model.toPolicy(curPolicy);
+
+	}
+
+	/**
+	 * Re-plans after the MDP parameters change: runs policy iteration on
+	 * {@code mdp} with discount {@code discountFactor}, starting from the current
+	 * policy and its values instead of a random policy and zero values. The model
+	 * is recompiled from the current one, so only the rewards are recomputed (see
+	 * {@link TTTMDP#compileFrom}). After a small change most of the policy is still
+	 * optimal, so few rounds are needed, and iterative evaluation starts from
+	 * values that are already close. If {@code mdp} has another opponent, its model
+	 * has other states, so it is solved from scratch instead.
+	 * 
+	 * @param mdp
+	 * @param discountFactor
+	 */
+	public void replan(TTTMDP mdp, double discountFactor) {
+		this.mdp = mdp;
+		this.discount = discountFactor;
 
-		// converting the updated curPolicy map into a Policy object
-		this.policy = new Policy(curPolicy);
+		// nothing to start from (e.g. the agent was built from a policy), or the policy
+		// is of other states (another opponent): a cold start
+		if (model == null || curPolicy == null || !model.sameDynamics(mdp)) {
+			initValues();
+			initRandomPolicy();
+		} else
+			this.model = mdp.compileFrom(model);
 
+		train();
+	}
+
+	/**
+	 * @return the statistics of each round of the last {@link #train()}
+	 */
+	public List<RoundStats> getRounds() {
+		return Collections.unmodifiableList(rounds);
 	}
 
 	public static void main(String[] args) throws IllegalMoveException {
@@ -23,6 +23,14 @@ import java.util.Random;
 
 public class QLearningAgent extends Agent {
 
+	/**
+	 * Why training stopped: all {@link #numEpisodes} episodes were played, or the
+	 * greedy policy had converged (see {@link #checkInterval})
+	 */
+	public enum StopReason {
+		EPISODE_LIMIT, CONVERGED
+	}
+
 	/**
 	 * The learning rate, between 0 and 1.
 	 */
@@ -60,6 +68,78 @@ public class QLearningAgent extends Agent {
 	 */
 	TTTEnvironment env = new TTTEnvironment();
 
+	/**
+	 * The opponent the agent trains against
+	 */
+	Agent opponent = new RandomAgent();
+
+	/**
+	 * The number of threads training in parallel, see {@link #trainInParallel()}.
+	 * 1 trains sequentially.
+	 */
+	int workers = 1;
+
+	/**
+	 * The experience replay buffer, or null to learn from each move only once, as
+	 * it is played (the default). See {@link #learnFromReplay(Random)}.
+	 */
+	ReplayBuffer replay = null;
+
+	/**
+	 * The number of transitions replayed from {@link #replay} after each move
+	 */
+	int replayBatch = 0;
+
+	/**
+	 * The slots of the transitions being replayed
+	 */
+	private int[] batch;
+
+	/**
+	 * Every {@code checkInterval} episodes, training compares the greedy move of
+	 * every game in the q-table with the last check, and stops early once at most
+	 * {@link #maxPolicyChanges} of them have changed for {@link #stableChecks}
+	 * checks in a row. 0 never checks, so all {@link #numEpisodes} episodes are
+	 * played (the default). Only for training on one thread.
+	 * 
+	 * A few changes have to be allowed: while the agent keeps exploring against a
+	 * random opponent, the greedy move of games with two nearly equal moves keeps
+	 * flipping between them long after the rest of the policy has settled.
+	 */
+	int checkInterval = 0;
+
+	/**
+	 * The number of checks in a row the greedy policy must be stable for training
+	 * to stop
+	 */
+	int stableChecks = 0;
+
+	/**
+	 * The largest number of games whose greedy move may change between two checks
+	 * for the policy to count as stable
+	 */
+	int maxPolicyChanges = 0;
+
+	/**
+	 * The greedy cell of every q-table row, and the q-values, at the last check
+	 */
+	private byte[] lastGreedy;
+	private byte[] greedy;
+	private double[] lastValues;
+
+	/**
+	 * The number of games whose greedy move changed, and the largest change of any
+	 * q-value, between the last two checks
+	 */
+	int policyChanges = -1;
+	double maxQDelta = Double.NaN;
+
+	/**
+	 * The number of episodes played by {@link #train()}, and why it stopped
+	 */
+	int episodesRun = 0;
+	StopReason stopReason = null;
+
 	/**
 	 * Construct a Q-Learning agent that learns from interactions with
 	 * {@code opponent}.
@@ -71,7 +151,92 @@ public class QLearningAgent extends Agent {
 	 * @param numEpisodes  The number of episodes (games) to train for
 	 */
 	public QLearningAgent(Agent opponent, double learningRate, int numEpisodes, double discount) {
+		this(opponent, learningRate, numEpisodes, discount, 1);
+	}
+
+	/**
+	 * Construct a Q-Learning agent that learns from interactions with
+	 * {@code opponent}, on {@code workers} threads in parallel.
+	 * 
+	 * @param opponent     the opponent agent that this Q-Learning agent will
+	 *                     interact with to learn.
+	 * @param learningRate This is the rate at which the agent learns. Alpha from
+	 *                     your lectures.
+	 * @param numEpisodes  The number of episodes (games) to train for, over all
+	 *                     workers
+	 * @param discount
+	 * @param workers      the number of training threads
+	 */
+	public QLearningAgent(Agent opponent, double learningRate, int numEpisodes, double discount, int workers) {
+		this(opponent, learningRate, numEpisodes, discount, workers, null, 0);
+	}
+
+	/**
+	 * Construct a Q-Learning agent that learns from interactions with
+	 * {@code opponent} with experience replay: every move is also stored in
+	 * {@code replay}, and after each move {@code replayBatch} transitions drawn
+	 * from it are learned from again. Trains on one thread.
+	 * 
+	 * @param opponent     the opponent agent that this Q-Learning agent will
+	 *                     interact with to learn.
+	 * @param learningRate This is the rate at which the agent learns. Alpha from
+	 *                     your lectures.
+	 * @param numEpisodes  The number of episodes (games) to train for
+	 * @param discount
+	 * @param replay       the replay buffer
+	 * @param replayBatch  the number of transitions replayed after each move
+	 */
+	public QLearningAgent(Agent opponent, double learningRate, int numEpisodes, double discount, ReplayBuffer replay,
+			int replayBatch) {
+		this(opponent, learningRate, numEpisodes, discount, 1, replay, replayBatch);
+	}
+
+	/**
+	 * Construct a Q-Learning agent that learns from interactions with
+	 * {@code opponent} until its greedy policy converges, or for
+	 * {@code maxEpisodes} episodes, whichever comes first (see
+	 * {@link #checkInterval}). Trains on one thread.
+	 * 
+	 * @param opponent      the opponent agent that this Q-Learning agent will
+	 *                      interact with to learn.
+	 * @param learningRate  This is the rate at which the agent learns. Alpha from
+	 *                      your lectures.
+	 * @param maxEpisodes   The largest number of episodes (games) to train for
+	 * @param discount
+	 * @param checkInterval    the number of episodes between convergence checks
+	 * @param stableChecks     the number of checks in a row the greedy policy
+	 *                         must be stable for training to stop
+	 * @param maxPolicyChanges the largest number of games whose greedy move may
+	 *                         change between two checks for the policy to count
+	 *                         as stable
+	 */
+	public QLearningAgent(Agent opponent, double learningRate, int maxEpisodes, double discount, int checkInterval,
+			int stableChecks, int maxPolicyChanges) {
+		this(opponent, learningRate, maxEpisodes, discount, 1, null, 0, checkInterval, stableChecks, maxPolicyChanges);
+	}
+
+	private QLearningAgent(Agent opponent, double learningRate, int numEpisodes, double discount, int workers,
+			ReplayBuffer replay, int replayBatch) {
+		this(opponent, learningRate, numEpisodes, discount, workers, replay, replayBatch, 0, 0, 0);
+	}
+
+	private QLearningAgent(Agent opponent, double learningRate, int numEpisodes, double discount, int workers,
+			ReplayBuffer replay, int replayBatch, int checkInterval, int stableChecks, int maxPolicyChanges) {
+		if (workers < 1)
+			throw new IllegalArgumentException("At least one worker is needed");
+		if (replay != null && replayBatch < 1)
+			throw new IllegalArgumentException("At least one transition must be replayed per move");
+		if (checkInterval < 0 || (checkInterval > 0 && stableChecks < 1))
+			throw new IllegalArgumentException("Convergence needs a positive check interval and number of checks");
 		env = new TTTEnvironment(opponent);
+		this.opponent = opponent;
+		this.workers = workers;
+		this.replay = replay;
+		this.replayBatch = replayBatch;
+		this.batch = new int[replayBatch];
+		this.checkInterval = checkInterval;
+		this.stableChecks = stableChecks;
+		this.maxPolicyChanges = maxPolicyChanges;
 		this.alpha = learningRate;
 		this.numEpisodes = numEpisodes;
 		this.discount = discount;
@@ -80,21 +245,13 @@ public class QLearningAgent extends Agent {
 	}
 
 	/**
-	 * Initialises all valid q-values -- Q(g,m) -- to 0.
+	 * Initialises all valid q-values -- Q(g,m) -- to 0. A new {@link QTable} has
+	 * all of them at 0 already.
 	 * 
 	 */
 
 	protected void initQTable() {
-		List<Game> allGames = Game.generateAllValidGames('X');// all valid games where it is X's turn, or it's terminal.
-		for (Game g : allGames) {
-			List<Move> moves = g.getPossibleMoves();
-			for (Move m : moves) {
-				this.qTable.addQValue(g, m, 0.0);
-				// System.out.println("initing q value. Game:"+g);
-				// System.out.println("Move:"+m);
-			}
-
-		}
+		this.qTable = new QTable();
 
 	}
 
@@ -121,99 +278,283 @@ public class QLearningAgent extends Agent {
 
 	public void train() {
 
-		// creating a random number greedy epsilon
-		Random random = new Random();
+		stopReason = StopReason.EPISODE_LIMIT;
+		if (workers > 1) {
+			trainInParallel();
+			episodesRun = numEpisodes;
+		} else {
+			// creating a random number greedy epsilon
+			Random random = new Random();
+			int stable = 0;
+			if (checkInterval > 0)
+				startChecks();
+
+			// looping through all episodes
+			int episode = 0;
+			while (episode < numEpisodes) {
+
+				playEpisode(env, random, epsilon);
+				episode++;
+
+				// decay epsilon on episodes for better exploitation
+				epsilon = Math.max(0.1, epsilon * 0.995);
+
+				// stop once the greedy policy has stopped changing
+				if (checkInterval > 0 && episode % checkInterval == 0) {
+					stable = isStable() ? stable + 1 : 0;
+					if (stable >= stableChecks) {
+						stopReason = StopReason.CONVERGED;
+						break;
+					}
+				}
+			}
+			episodesRun = episode;
+		}
+
+		// --------------------------------------------------------
+		// you shouldn't need to delete the following lines of code.
+		this.policy = extractPolicy();
+		if (this.policy == null) {
+			System.out.println("Unimplemented methods! First implement the train() & extractPolicy methods");
+			// System.exit(1);
+		}
+	}
 
-		// looping through all episodes
-		for (int episode = 0; episode < numEpisodes; episode++) {
+	/**
+	 * Plays one episode (game) in {@code environment}, updating q-values with the
+	 * Q-Learning rule after each move. Moves are picked epsilon-greedily, exploring
+	 * with probability {@code explorationRate}.
+	 */
+	private void playEpisode(TTTEnvironment environment, Random random, double explorationRate) {
 
-			// resetting environment for new game
-			env.reset();
-			Game currentState = env.getCurrentGameState();
+		// resetting environment for new game
+		environment.reset();
+		Game currentState = environment.getCurrentGameState();
 
-			// if the state is terminal add Q-value for this state and go to next episode
-			if (currentState.isTerminal()) {
-				qTable.addQValue(currentState, null, 0.0);
-				continue;
-			}
+		// if the state is terminal add Q-value for this state and go to next episode
+		if (currentState.isTerminal()) {
+			qTable.addQValue(currentState, null, 0.0);
+			return;
+		}
+
+		// play till game ends(termianl state)
+		while (!environment.isTerminal()) {
 
-			// play till game ends(termianl state)
-			while (!env.isTerminal()) {
+			// the index of the current state in the q-table, looked up once per step
+			int state = qTable.stateOf(currentState);
 
-				// var to store the selected move
-				Move selectedMove;
+			// var to store the selected move
+			Move selectedMove;
 
-				// epsilon greedy policy explore or exploit
-				if (random.nextDouble() < epsilon) {
+			// epsilon greedy policy explore or exploit
+			if (random.nextDouble() < explorationRate) {
 
-					// select a random move from available moves(explore)
-					List<Move> possibleMoves = env.getPossibleMoves();
-					selectedMove = possibleMoves.get(random.nextInt(possibleMoves.size()));
-				} else {
+				// select a random move from available moves(explore)
+				List<Move> possibleMoves = environment.getPossibleMoves();
+				selectedMove = possibleMoves.get(random.nextInt(possibleMoves.size()));
+			} else {
 
-					// selecting move with the highest Q-value (exploit)
-					List<Move> possibleMoves = env.getPossibleMoves();
-					selectedMove = possibleMoves.get(0);
+				// selecting move with the highest Q-value (exploit)
+				List<Move> possibleMoves = environment.getPossibleMoves();
+				selectedMove = possibleMoves.get(0);
 
-					// looping through all possible moves and selecting one with the greatest
-					// Q-value
-					for (Move move : possibleMoves) {
-						if (qTable.getQValue(currentState, move) > qTable.getQValue(currentState, selectedMove)) {
+				// looping through all possible moves and selecting one with the greatest
+				// Q-value
+				for (Move move : possibleMoves) {
+					if (qTable.getQValue(state, Game.cell(move.x, move.y)) > qTable.getQValue(state,
+							Game.cell(selectedMove.x, selectedMove.y))) {
 
-							// updating the best move if we find a move with greater Q-value
-							selectedMove = move;
-						}
+						// updating the best move if we find a move with greater Q-value
+						selectedMove = move;
 					}
 				}
+			}
 
-				// executing the selected move and geting the outcome(next state, reward etc)
-				Outcome outcome;
-				try {
-					// execute the move and get outcome
-					outcome = env.executeMove(selectedMove);
-				} catch (IllegalMoveException e) {
+			// executing the selected move and geting the outcome(next state, reward etc)
+			Outcome outcome;
+			try {
+				// execute the move and get outcome
+				outcome = environment.executeMove(selectedMove);
+			} catch (IllegalMoveException e) {
 
-					// if illegal move give warning
-					System.out.println("Illegal move encountered: " + e.getMessage());
-					break;
-				}
+				// if illegal move give warning
+				System.out.println("Illegal move encountered: " + e.getMessage());
+				break;
+			}
 
-				// if outcome is null (terminal state) then break
-				if (outcome == null) {
-					break;
-				}
+			// if outcome is null (terminal state) then break
+			if (outcome == null) {
+				break;
+			}
 
-				// calculate max Q-value for the next state (after opposite move)
-				double maxNextQValue = 0.0;
-				if (!outcome.sPrime.isTerminal()) {
+			// calculate max Q-value for the next state (after opposite move)
+			int nextState = outcome.sPrime.isTerminal() ? -1 : qTable.stateOf(outcome.sPrime);
+			double maxNextQValue = maxQValue(nextState);
 
-					// if next state is not terminal we calculate the highest Q-value from all
-					// possible moves
-					for (Move move : outcome.sPrime.getPossibleMoves()) {
-						maxNextQValue = Math.max(maxNextQValue, qTable.getQValue(outcome.sPrime, move));
-					}
-				}
+			// updating Q-value for the current state using Q-learning foramula
+			double sample = outcome.localReward + discount * maxNextQValue;
 
-				// updating Q-value for the current state using Q-learning foramula
-				double sample = outcome.localReward + discount * maxNextQValue;
+			int cell = Game.cell(selectedMove.x, selectedMove.y);
+			double updatedQValue = (1 - alpha) * qTable.getQValue(state, cell) + alpha * sample;
+			qTable.setQValue(state, cell, updatedQValue);
 
-				double updatedQValue = (1 - alpha) * qTable.getQValue(outcome.s, selectedMove) + alpha * sample;
-				qTable.addQValue(outcome.s, selectedMove, updatedQValue);
-
-				// move to next state and update current stae to new state
-				currentState = outcome.sPrime;
+			// store the move and learn from a batch of past moves again
+			if (replay != null) {
+				replay.add(state, cell, outcome.localReward, nextState);
+				learnFromReplay(random);
 			}
 
-			// decay epsilon on episodes for better exploitation
-			epsilon = Math.max(0.1, epsilon * 0.995);
+			// move to next state and update current stae to new state
+			currentState = outcome.sPrime;
 		}
+	}
 
-		// --------------------------------------------------------
-		// you shouldn't need to delete the following lines of code.
-		this.policy = extractPolicy();
-		if (this.policy == null) {
-			System.out.println("Unimplemented methods! First implement the train() & extractPolicy methods");
-			// System.exit(1);
+	/**
+	 * Allocates the buffers of the convergence checks, if needed, and fills them
+	 * with the greedy policy and q-values of the table before training, for the
+	 * first check to compare with.
+	 */
+	private void startChecks() {
+		if (lastGreedy == null) {
+			lastGreedy = new byte[qTable.rows()];
+			greedy = new byte[qTable.rows()];
+			lastValues = new double[qTable.size()];
+		}
+		qTable.greedyCells(lastGreedy);
+		qTable.copyValues(lastValues);
+	}
+
+	/**
+	 * Compares the greedy policy and the q-values with those of the last check
+	 * (see {@link #startChecks()} for the first one), and copies them into the
+	 * same buffers for the next check.
+	 * 
+	 * @return true if the greedy move of at most {@link #maxPolicyChanges} games
+	 *         has changed
+	 */
+	private boolean isStable() {
+		qTable.greedyCells(greedy);
+		policyChanges = 0;
+		for (int r = 0; r < greedy.length; r++) {
+			if (greedy[r] != lastGreedy[r])
+				policyChanges++;
+		}
+		maxQDelta = 0.0;
+		for (int i = 0; i < lastValues.length; i++)
+			maxQDelta = Math.max(maxQDelta, Math.abs(qTable.value(i) - lastValues[i]));
+
+		byte[] swap = lastGreedy;
+		lastGreedy = greedy;
+		greedy = swap;
+		qTable.copyValues(lastValues);
+		return policyChanges <= maxPolicyChanges;
+	}
+
+	/**
+	 * @return the number of episodes the last {@link #train()} played
+	 */
+	public int getEpisodesRun() {
+		return episodesRun;
+	}
+
+	/**
+	 * @return why the last {@link #train()} stopped
+	 */
+	public StopReason getStopReason() {
+		return stopReason;
+	}
+
+	/**
+	 * @return the number of games whose greedy move changed between the last two
+	 *         convergence checks, -1 if there were none
+	 */
+	public int getPolicyChanges() {
+		return policyChanges;
+	}
+
+	/**
+	 * @return the largest change of any q-value between the last two convergence
+	 *         checks, NaN if there were none
+	 */
+	public double getMaxQDelta() {
+		return maxQDelta;
+	}
+
+	/**
+	 * @return the highest q-value over the possible moves (the empty cells) of the
+	 *         game with index {@code state}, and at least 0. 0 if {@code state} is
+	 *         -1, i.e. the game ended.
+	 */
+	private double maxQValue(int state) {
+		double max = 0.0;
+		if (state < 0)
+			return max;
+
+		StateIndex index = StateIndex.get();
+		int empty = ~(index.xBoard(state) | index.oBoard(state)) & Game.FULL_BOARD;
+		for (int cell = 0; cell < 9; cell++) {
+			if ((empty & (1 << cell)) != 0)
+				max = Math.max(max, qTable.getQValue(state, cell));
+		}
+		return max;
+	}
+
+	/**
+	 * Draws {@link #replayBatch} transitions from {@link #replay} and applies the
+	 * Q-Learning update to each of them, as if the move had just been played. With
+	 * prioritized sampling, each transition's priority is then set from the error
+	 * of its update. The updates are not weighted to undo the bias of prioritized
+	 * sampling: the q-values are a table, not a function fitted to the samples, so
+	 * replaying some transitions more often only speeds up learning them.
+	 */
+	private void learnFromReplay(Random random) {
+		replay.sample(replayBatch, random, batch);
+		for (int i = 0; i < replayBatch; i++) {
+			int slot = batch[i];
+			int state = replay.getState(slot);
+			int cell = replay.getCell(slot);
+			double q = qTable.getQValue(state, cell);
+			double error = replay.getReward(slot) + discount * maxQValue(replay.getNextState(slot)) - q;
+			qTable.setQValue(state, cell, q + alpha * error);
+			replay.updatePriority(slot, error);
+		}
+	}
+
+	/**
+	 * Hogwild-style parallel training: {@link #workers} threads play
+	 * {@link #numEpisodes} episodes between them, each with its own environment
+	 * and random generator, and all update the shared {@link #qTable} without any
+	 * locking. When two workers update the same q-value at once one of the updates
+	 * can be lost, which only drops a sample; this is much cheaper than locking
+	 * every update. Each q-value is read and written atomically (see
+	 * {@link QTable}), so a lost update never leaves a torn value behind. Each worker's environment is built with the configured
+	 * {@link #opponent}, but like the sequential {@link #env} it plays a new
+	 * {@link RandomAgent} after every {@link TTTEnvironment#reset()}, so in
+	 * practice every worker trains against its own random opponent. The policy is
+	 * extracted once, after all workers have finished.
+	 */
+	private void trainInParallel() {
+		Thread[] running = new Thread[workers];
+		for (int i = 0; i < workers; i++) {
+			// split the episodes as evenly as possible
+			final int episodes = numEpisodes / workers + ((i < numEpisodes % workers) ? 1 : 0);
+			running[i] = new Thread(() -> {
+				TTTEnvironment environment = new TTTEnvironment(opponent);
+				Random random = new Random();
+				double explorationRate = epsilon;
+				for (int episode = 0; episode < episodes; episode++) {
+					playEpisode(environment, random, explorationRate);
+					explorationRate = Math.max(0.1, explorationRate * 0.995);
+				}
+			});
+			running[i].start();
+		}
+		for (Thread t : running) {
+			try {
+				t.join();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
 		}
 	}
 
@@ -1,59 +1,216 @@
 package ticTacToe;
 
-import java.util.HashMap;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLongArray;
+
 /**
- * This class a simple implementation of a Q-Table. It's a subclass of {@link java.util.HashMap}, so all the methods from 
- * that class are available. Two methods for adding and retrieving q-values to/from the table are provided.
- * 
+ * This class a simple implementation of a Q-Table, stored in a single flat array: the q-value of move
+ * (cell) {@code k} in the game with row {@code r} is at {@code r*9+k}. Two methods for adding and retrieving q-values
+ * to/from the table are provided for {@link Game} and {@link Move} objects, along with primitive versions that take a
+ * {@link StateIndex} index and a cell (see {@link Game#cell}) for training loops.
+ *
+ * Q-values are stored for canonical games only (see {@link Game#canonical()}): every game is mapped, and the move with
+ * it, to the canonical form first, so experience from one game also updates all the games symmetric to it. Only the
+ * canonical games have a row. Moves that are symmetric within a game, e.g. the four corners of the empty board, share
+ * a q-value too. The row and symmetry of every valid game are computed once and shared by all tables.
+ *
+ * All q-values start at 0. The values are stored as the bits of the doubles in an {@link AtomicLongArray}, so that
+ * several threads can update a table at once without locking (see {@link QLearningAgent}): an update can be lost to a
+ * concurrent one, but a reader never sees half of one q-value and half of another.
+ *
  * @author ae187
  *
  */
-public class QTable extends HashMap<Game, HashMap<Move,Double>> {
+public class QTable {
+
+	/**
+	 * The row of the canonical form of each game, and the symmetry that maps the game onto it, by {@link StateIndex}
+	 * index. Also, per row, the cells that can be played in its game (one per class of symmetric moves), 0 if it is
+	 * over, and for each cell the cell whose q-value it shares: the lowest cell any symmetry of the game maps it to.
+	 */
+	private static class Rows {
+		static final int[] ROW_OF_INDEX;
+		static final byte[] TRANSFORM_OF_INDEX;
+		static final int[] MOVES_OF_ROW;
+		static final byte[] CELL_OF_ROW;
+		static final int NUM_ROWS;
+
+		static {
+			StateIndex index=StateIndex.get();
+			int n=index.size();
+			ROW_OF_INDEX=new int[n];
+			TRANSFORM_OF_INDEX=new byte[n];
+			int[] moves=new int[n];
+			byte[] cells=new byte[n*9];
+
+			// rows are numbered in index order, so a canonical game always comes before the other games in its class
+			int rows=0;
+			for(int i=0;i<n;i++)
+			{
+				Game g=index.gameAt(i);
+				int t=g.canonicalTransform();
+				TRANSFORM_OF_INDEX[i]=(byte)t;
+				if (t==0)
+				{
+					int x=index.xBoard(i);
+					int o=index.oBoard(i);
+					for(int k=0;k<9;k++)
+					{
+						int shared=k;
+						for(int s=1;s<Symmetry.COUNT;s++)
+							if (Symmetry.transformBoard(x, s)==x && Symmetry.transformBoard(o, s)==o)
+								shared=Math.min(shared, Symmetry.transformCell(k, s));
+						cells[rows*9+k]=(byte)shared;
+						if (shared==k && g.getState()==Game.ONGOING)
+							moves[rows]|=g.emptyCells()&(1<<k);
+					}
+					ROW_OF_INDEX[i]=rows++;
+				}
+				else
+					ROW_OF_INDEX[i]=ROW_OF_INDEX[index.indexOf(g.transform(t))];
+			}
+			NUM_ROWS=rows;
+			MOVES_OF_ROW=Arrays.copyOf(moves, rows);
+			CELL_OF_ROW=Arrays.copyOf(cells, rows*9);
+		}
+	}
+
+	/**
+	 * The q-values, 9 per canonical game, as {@link Double#doubleToRawLongBits} (0 is 0.0)
+	 */
+	private final AtomicLongArray values;
 
-	
 	public QTable()
 	{
-		super();
+		this.values=new AtomicLongArray(Rows.NUM_ROWS*9);
+	}
+
+	/**
+	 * @return the {@link StateIndex} index of {@code g}, to use with the primitive methods, or -1 if it's not valid
+	 */
+	public int stateOf(Game g)
+	{
+		return StateIndex.get().indexOf(g);
 	}
-	
+
 	/**
-	 * 
+	 * @return the position in {@link #values} of the q-value of cell {@code cell} in the game with index {@code state}
 	 */
-	private static final long serialVersionUID = 1L;
-	
+	final int slot(int state, int cell)
+	{
+		int row=Rows.ROW_OF_INDEX[state]*9;
+		return row+Rows.CELL_OF_ROW[row+Symmetry.transformCell(cell, Rows.TRANSFORM_OF_INDEX[state])];
+	}
+
 	/**
-	 * 
+	 * @return the q-value of playing {@code cell} in the game with {@link StateIndex} index {@code state}
+	 */
+	public double getQValue(int state, int cell)
+	{
+		return value(slot(state, cell));
+	}
+
+	/**
+	 * Sets the q-value of playing {@code cell} in the game with {@link StateIndex} index {@code state} to {@code v}.
+	 */
+	public void setQValue(int state, int cell, double v)
+	{
+		// ordered rather than volatile: the store itself is atomic, and nothing has to wait for it to be seen
+		values.lazySet(slot(state, cell), Double.doubleToRawLongBits(v));
+	}
+
+	/**
+	 *
 	 * @param g
 	 * @param m
-	 * @return the q value associated with the q-state {@code (g,m)}, where game is a {@link Game} object 
-	 * and m is a {@link Move} object}
+	 * @return the q value associated with the q-state {@code (g,m)}, where game is a {@link Game} object
+	 * and m is a {@link Move} object}, or null if there is no such q-state (the game is not valid, or the move is null
+	 * or plays an occupied cell)
 	 */
 	public Double getQValue(Game g, Move m)
 	{
-		if (containsKey(g))
-		{
-			HashMap<Move,Double> moves=get(g);
-			if (moves.containsKey(m))
-				return moves.get(m);
-		}
-		
-		return null;
+		int state=stateOf(g);
+		if (state<0 || m==null || !isEmpty(state, Game.cell(m.x, m.y)))
+			return null;
+
+		return getQValue(state, Game.cell(m.x, m.y));
 	}
-	
+
 	/**
-	 * Adds the q-value mapping (g,m)->v to the q-table represented by this map.
+	 * Adds the q-value mapping (g,m)->v to the q-table. Q-states that don't exist (see {@link #getQValue(Game, Move)})
+	 * are ignored.
 	 * @param g
 	 * @param m
 	 * @param v
 	 */
 	public void addQValue(Game g, Move m, Double v)
 	{
-		if (!containsKey(g))
-			this.put(g, new HashMap<Move,Double>());
-		
-		this.get(g).put(m, v);
+		int state=stateOf(g);
+		if (state<0 || m==null || !isEmpty(state, Game.cell(m.x, m.y)))
+			return;
+
+		setQValue(state, Game.cell(m.x, m.y), v);
+	}
+
+	private static boolean isEmpty(int state, int cell)
+	{
+		StateIndex index=StateIndex.get();
+		return ((index.xBoard(state)|index.oBoard(state))&(1<<cell))==0;
+	}
+
+	/**
+	 * Writes the greedy move of every row into {@code cells}: the cell with the highest q-value among the cells that
+	 * can be played, one per class of symmetric moves (the first one on ties), or -1 if the row's game is over. The cells are in the row's canonical
+	 * frame, so they are only meant to be compared between calls, e.g. to see whether the greedy policy has changed.
+	 *
+	 * @param cells an array of at least {@link #rows()} entries
+	 */
+	void greedyCells(byte[] cells)
+	{
+		for(int r=0;r<Rows.NUM_ROWS;r++)
+		{
+			int moves=Rows.MOVES_OF_ROW[r];
+			int best=-1;
+			for(int k=0;k<9;k++)
+				if ((moves&(1<<k))!=0 && (best<0 || value(r*9+k)>value(r*9+best)))
+					best=k;
+			cells[r]=(byte)best;
+		}
+	}
+
+	/**
+	 * @return the q-value in position {@code slot} of the table
+	 */
+	final double value(int slot)
+	{
+		return Double.longBitsToDouble(values.get(slot));
+	}
+
+	/**
+	 * Copies all the q-values, in table order, into {@code into}.
+	 *
+	 * @param into an array of at least {@link #size()} entries
+	 */
+	void copyValues(double[] into)
+	{
+		for(int i=0;i<values.length();i++)
+			into[i]=value(i);
+	}
+
+	/**
+	 * @return the number of rows, i.e. of canonical games
+	 */
+	int rows()
+	{
+		return Rows.NUM_ROWS;
+	}
+
+	/**
+	 * @return the number of q-values in the table
+	 */
+	public int size()
+	{
+		return values.length();
 	}
-	
-	
 
 }
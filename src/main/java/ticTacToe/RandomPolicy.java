@@ -23,7 +23,7 @@ public class RandomPolicy extends Policy{
 		for(int i=0;i<3;i++)
 			for(int j=0;j<3;j++)
 			{
-				if (g.getBoard()[i][j]==' ')
+				if (g.getCell(i, j)==' ')
 					pairs.add(new IndexPair(i,j));
 					
 			}
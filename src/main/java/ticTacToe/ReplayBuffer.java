@@ -0,0 +1,234 @@
+package ticTacToe;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.util.Random;
+
+/**
+ * A fixed-capacity experience replay buffer for {@link QLearningAgent}: a ring
+ * buffer of [s,a,r,s'] transitions, where the oldest transition is overwritten
+ * once the buffer is full. States are {@link StateIndex} indices and actions
+ * are cells (see {@link Game#cell}).
+ *
+ * Transitions are packed into a direct {@link ByteBuffer}, {@link #RECORD_BYTES}
+ * bytes each, so a large buffer lives outside the Java heap and costs the
+ * garbage collector nothing: the state and the cell in one int, the next state
+ * (-1 if the game ended) in another, and the reward as a double.
+ *
+ * Sampling is either uniform or prioritized. With prioritized sampling each
+ * transition is drawn with probability proportional to its priority, which is
+ * set from the size of its last temporal difference error with
+ * {@link #updatePriority}; new transitions get the highest priority seen so far,
+ * so every transition is replayed at least once soon after it is added. The
+ * priorities are kept in a sum tree, also off the heap, so sampling and
+ * updating a priority take O(log capacity).
+ *
+ * A buffer is not thread safe.
+ *
+ */
+public class ReplayBuffer {
+
+	public enum Sampling {
+		UNIFORM, PRIORITIZED
+	}
+
+	/**
+	 * The size of one transition in the buffer
+	 */
+	static final int RECORD_BYTES = 16;
+
+	/**
+	 * Added to every priority, so that transitions with no error can still be
+	 * drawn
+	 */
+	static final double MIN_PRIORITY = 1e-3;
+
+	final Sampling sampling;
+
+	/**
+	 * How strongly the priorities are followed: a transition's priority is its
+	 * error to the power of this exponent. 0 is uniform sampling.
+	 */
+	final double priorityExponent;
+
+	private final ByteBuffer records;
+	private final int capacity;
+
+	/**
+	 * The sum tree of the priorities: leaf {@code i} of the tree, at
+	 * {@code leaves+i}, is the priority of slot {@code i}, and every other node is
+	 * the sum of its two children, so node 1 is the total. Null for uniform
+	 * sampling. The nodes above a changed leaf are summed again from their
+	 * children, rather than adjusted by the change, so rounding errors don't build
+	 * up over a long run.
+	 */
+	private final DoubleBuffer tree;
+	private final int leaves;
+
+	private int size = 0;
+	private int next = 0;
+	private double maxPriority = 1.0;
+
+	/**
+	 * The largest capacity: the transitions, and for prioritized sampling the sum
+	 * tree, must fit in one {@link ByteBuffer}
+	 */
+	static final int MAX_CAPACITY = Integer.MAX_VALUE / RECORD_BYTES;
+	static final int MAX_PRIORITIZED_CAPACITY = 1 << 26;
+
+	/**
+	 * A uniformly sampled buffer of {@code capacity} transitions
+	 */
+	public ReplayBuffer(int capacity) {
+		this(capacity, Sampling.UNIFORM, 0.0);
+	}
+
+	/**
+	 * @param capacity         the number of transitions the buffer holds
+	 * @param sampling         how transitions are drawn
+	 * @param priorityExponent for prioritized sampling, how strongly the
+	 *                         priorities are followed (0.6 is a common choice)
+	 * @throws IllegalArgumentException if {@code capacity} is less than 1 or more
+	 *                                  than {@link #MAX_CAPACITY} ({@link #MAX_PRIORITIZED_CAPACITY}
+	 *                                  for prioritized sampling)
+	 */
+	public ReplayBuffer(int capacity, Sampling sampling, double priorityExponent) {
+		if (capacity < 1)
+			throw new IllegalArgumentException("The buffer needs room for at least one transition");
+		if (capacity > ((sampling == Sampling.PRIORITIZED) ? MAX_PRIORITIZED_CAPACITY : MAX_CAPACITY))
+			throw new IllegalArgumentException("A replay buffer can't hold " + capacity + " transitions");
+		if (priorityExponent < 0)
+			throw new IllegalArgumentException("The priority exponent can't be negative");
+		this.capacity = capacity;
+		this.sampling = sampling;
+		this.priorityExponent = priorityExponent;
+		this.records = ByteBuffer.allocateDirect(capacity * RECORD_BYTES).order(ByteOrder.nativeOrder());
+
+		if (sampling == Sampling.PRIORITIZED) {
+			int n = Integer.highestOneBit(capacity);
+			if (n < capacity)
+				n <<= 1;
+			leaves = n;
+			tree = ByteBuffer.allocateDirect(2 * n * 8).order(ByteOrder.nativeOrder()).asDoubleBuffer();
+		} else {
+			leaves = 0;
+			tree = null;
+		}
+	}
+
+	/**
+	 * Adds the transition [state, cell, reward, nextState], overwriting the oldest
+	 * one if the buffer is full.
+	 *
+	 * @param nextState the index of the next state, or -1 if the game ended
+	 * @return the slot the transition was stored in
+	 */
+	public int add(int state, int cell, double reward, int nextState) {
+		int slot = next;
+		int offset = slot * RECORD_BYTES;
+		records.putInt(offset, state << 4 | cell);
+		records.putInt(offset + 4, nextState);
+		records.putDouble(offset + 8, reward);
+
+		if (tree != null)
+			setPriority(slot, maxPriority);
+
+		next = (next + 1 == capacity) ? 0 : next + 1;
+		if (size < capacity)
+			size++;
+		return slot;
+	}
+
+	/**
+	 * Draws {@code count} transitions, with replacement, and writes their slots
+	 * into {@code slots}.
+	 *
+	 * @throws IllegalStateException if the buffer is empty
+	 */
+	public void sample(int count, Random random, int[] slots) {
+		if (size == 0)
+			throw new IllegalStateException("Sampling from an empty replay buffer");
+		for (int i = 0; i < count; i++)
+			slots[i] = (tree == null) ? random.nextInt(size) : find(random.nextDouble() * tree.get(1));
+	}
+
+	/**
+	 * @return the slot of the leaf where the running sum of the priorities, from
+	 *         slot 0, goes past {@code target}
+	 */
+	private int find(double target) {
+		int node = 1;
+		while (node < leaves) {
+			double left = tree.get(2 * node);
+			if (target < left)
+				node = 2 * node;
+			else {
+				target -= left;
+				node = 2 * node + 1;
+			}
+		}
+		// rounding can leave the target just past the last filled slot
+		return Math.min(node - leaves, size - 1);
+	}
+
+	/**
+	 * Sets the priority of the transition in {@code slot} from its last temporal
+	 * difference error {@code error}. Does nothing for uniform sampling.
+	 */
+	public void updatePriority(int slot, double error) {
+		if (tree == null)
+			return;
+		double p = Math.pow(Math.abs(error) + MIN_PRIORITY, priorityExponent);
+		maxPriority = Math.max(maxPriority, p);
+		setPriority(slot, p);
+	}
+
+	private void setPriority(int slot, double p) {
+		int node = leaves + slot;
+		tree.put(node, p);
+		for (node >>= 1; node >= 1; node >>= 1)
+			tree.put(node, tree.get(2 * node) + tree.get(2 * node + 1));
+	}
+
+	/**
+	 * @return the sampling probability of the transition in {@code slot}
+	 */
+	public double probability(int slot) {
+		if (tree == null)
+			return 1.0 / size;
+		return tree.get(leaves + slot) / tree.get(1);
+	}
+
+	public int getState(int slot) {
+		return records.getInt(slot * RECORD_BYTES) >>> 4;
+	}
+
+	public int getCell(int slot) {
+		return records.getInt(slot * RECORD_BYTES) & 0xF;
+	}
+
+	/**
+	 * @return the index of the next state of the transition in {@code slot}, or -1
+	 *         if the game ended
+	 */
+	public int getNextState(int slot) {
+		return records.getInt(slot * RECORD_BYTES + 4);
+	}
+
+	public double getReward(int slot) {
+		return records.getDouble(slot * RECORD_BYTES + 8);
+	}
+
+	/**
+	 * @return the number of transitions in the buffer
+	 */
+	public int size() {
+		return size;
+	}
+
+	public int capacity() {
+		return capacity;
+	}
+
+}
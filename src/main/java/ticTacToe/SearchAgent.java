@@ -0,0 +1,34 @@
+package ticTacToe;
+
+/**
+ * A search agent: it needs no training, and finds each move when it is asked
+ * for it, by an alpha-beta search to the end of the game (see
+ * {@link SearchPolicy}). It plays perfectly, as X or as O.
+ *
+ */
+public class SearchAgent extends Agent {
+
+	public SearchAgent() {
+		super(new SearchPolicy());
+	}
+
+	/**
+	 * @param tableSize   the number of slots of the transposition table
+	 * @param replacement the replacement policy of the transposition table
+	 */
+	public SearchAgent(int tableSize, SearchPolicy.Replacement replacement) {
+		super(new SearchPolicy(tableSize, replacement));
+	}
+
+	public static void main(String[] args) throws IllegalMoveException {
+		/**
+		 * Test code to run the Search Agent against a Human Agent.
+		 */
+		SearchAgent agent = new SearchAgent();
+		HumanAgent h = new HumanAgent();
+
+		Game g = new Game(agent, h, h);
+		g.playOut();
+	}
+
+}
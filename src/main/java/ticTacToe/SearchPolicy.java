@@ -0,0 +1,248 @@
+package ticTacToe;
+
+/**
+ * A policy that searches the game tree when asked for a move, instead of
+ * looking it up in a table computed in advance: negamax with alpha-beta
+ * pruning, searched to the end of the game, so it plays perfectly for either
+ * side. A win is worth more the sooner it comes (and a loss the later), so the
+ * policy goes for the quickest win and holds out longest when lost.
+ *
+ * Moves are tried in order: first the best move found in an earlier search of
+ * the same game, if any, then the centre, the corners and the edges. Searched
+ * games are stored in a transposition table of bounded size keyed by
+ * {@link Game#hashCode()}, which is kept between calls so later moves mostly
+ * hit the table. Successors are generated in place with {@link Game#push} and
+ * {@link Game#pop}.
+ *
+ */
+public class SearchPolicy extends Policy {
+
+	/**
+	 * What to do when a game hashes to a slot of the transposition table that
+	 * holds another game: always overwrite it, or only if the new game's subtree
+	 * is at least as deep (has at least as many empty cells), since deeper results
+	 * save more work.
+	 */
+	public enum Replacement {
+		ALWAYS, DEPTH_PREFERRED
+	}
+
+	/**
+	 * The kind of value stored for a game: exact, or a lower or upper bound from a
+	 * search that was cut off by alpha-beta.
+	 */
+	private static final byte EXACT = 0;
+	private static final byte LOWER = 1;
+	private static final byte UPPER = 2;
+
+	/**
+	 * The order cells are tried in: centre, corners, edges
+	 */
+	private static final int[] MOVE_ORDER = { 4, 0, 2, 6, 8, 1, 3, 5, 7 };
+
+	/**
+	 * The default number of slots of the transposition table
+	 */
+	public static final int DEFAULT_TABLE_SIZE = 1 << 14;
+
+	/**
+	 * The transposition table, one entry per slot: the game hash (-1 if empty),
+	 * its value, the kind of value, the best cell and the number of empty cells.
+	 */
+	private final int[] keys;
+	private final byte[] values;
+	private final byte[] flags;
+	private final byte[] bestCells;
+	private final byte[] depths;
+	private final int mask;
+
+	final Replacement replacement;
+
+	/**
+	 * counters of the last {@link #getMove} call: nodes searched, and table probes
+	 * that found their game
+	 */
+	private long nodes = 0;
+	private long tableHits = 0;
+
+	public SearchPolicy() {
+		this(DEFAULT_TABLE_SIZE, Replacement.DEPTH_PREFERRED);
+	}
+
+	/**
+	 * @param tableSize   the number of slots of the transposition table, rounded up
+	 *                    to a power of 2
+	 * @param replacement the replacement policy of the table
+	 */
+	public SearchPolicy(int tableSize, Replacement replacement) {
+		if (tableSize < 1)
+			throw new IllegalArgumentException("The transposition table needs at least one slot");
+		int size = Integer.highestOneBit(tableSize);
+		if (size < tableSize)
+			size <<= 1;
+
+		this.keys = new int[size];
+		this.values = new byte[size];
+		this.flags = new byte[size];
+		this.bestCells = new byte[size];
+		this.depths = new byte[size];
+		this.mask = size - 1;
+		this.replacement = replacement;
+		for (int i = 0; i < size; i++)
+			keys[i] = -1;
+	}
+
+	@Override
+	public synchronized Move getMove(Game game) {
+		nodes = 0;
+		tableHits = 0;
+		if (game.getState() != Game.ONGOING)
+			return null;
+
+		// search a copy, so the caller's game (and its undo stack) is not touched
+		Game g = game.clone();
+		int empty = g.emptyCells();
+		int first = tableMove(g.hashCode());
+
+		int best = Integer.MIN_VALUE;
+		int bestCell = -1;
+		int alpha = -100;
+		for (int i = -1; i < MOVE_ORDER.length; i++) {
+			int k = (i < 0) ? first : MOVE_ORDER[i];
+			if (k < 0 || (i >= 0 && k == first) || (empty & (1 << k)) == 0)
+				continue;
+
+			play(g, k);
+			int value = -negamax(g, -100, -alpha);
+			g.pop();
+			if (value > best) {
+				best = value;
+				bestCell = k;
+				alpha = Math.max(alpha, value);
+			}
+		}
+		store(g.hashCode(), best, EXACT, bestCell, Integer.bitCount(empty));
+		return new Move(g.whoseTurn, bestCell / 3, bestCell % 3);
+	}
+
+	/**
+	 * @return the value of {@code g} for the player to move, if it is within
+	 *         {@code (alpha, beta)}; otherwise a bound on the side of the window it
+	 *         falls on. {@code g} is left unchanged.
+	 */
+	private int negamax(Game g, int alpha, int beta) {
+		nodes++;
+		int empty = g.emptyCells();
+		int state = g.getState();
+		if (state == Game.DRAW)
+			return 0;
+		if (state != Game.ONGOING)
+			// the player who just moved won
+			return -(Integer.bitCount(empty) + 1);
+
+		int hash = g.hashCode();
+		int slot = hash & mask;
+		int first = -1;
+		if (keys[slot] == hash) {
+			tableHits++;
+			int value = values[slot];
+			if (flags[slot] == EXACT)
+				return value;
+			if (flags[slot] == LOWER)
+				alpha = Math.max(alpha, value);
+			else
+				beta = Math.min(beta, value);
+			if (alpha >= beta)
+				return value;
+			first = bestCells[slot];
+		}
+
+		int alphaOriginal = alpha;
+		int best = Integer.MIN_VALUE;
+		int bestCell = -1;
+		for (int i = -1; i < MOVE_ORDER.length; i++) {
+			int k = (i < 0) ? first : MOVE_ORDER[i];
+			if (k < 0 || (i >= 0 && k == first) || (empty & (1 << k)) == 0)
+				continue;
+
+			play(g, k);
+			int value = -negamax(g, -beta, -alpha);
+			g.pop();
+			if (value > best) {
+				best = value;
+				bestCell = k;
+				if (value > alpha)
+					alpha = value;
+				if (alpha >= beta)
+					break;
+			}
+		}
+
+		byte flag = (best <= alphaOriginal) ? UPPER : (best >= beta) ? LOWER : EXACT;
+		store(hash, best, flag, bestCell, Integer.bitCount(empty));
+		return best;
+	}
+
+	/**
+	 * Plays cell {@code k}, which must be empty, for the player to move.
+	 */
+	private static void play(Game g, int k) {
+		try {
+			g.push(k / 3, k % 3);
+		} catch (IllegalMoveException e) {
+			throw new IllegalStateException("Searched an illegal move: " + e.getMessage());
+		}
+	}
+
+	/**
+	 * @return the best cell stored for the game with hash {@code hash}, or -1
+	 */
+	private int tableMove(int hash) {
+		int slot = hash & mask;
+		return (keys[slot] == hash) ? bestCells[slot] : -1;
+	}
+
+	private void store(int hash, int value, byte flag, int bestCell, int depth) {
+		int slot = hash & mask;
+		if (replacement == Replacement.DEPTH_PREFERRED && keys[slot] != -1 && keys[slot] != hash
+				&& depths[slot] > depth)
+			return;
+
+		keys[slot] = hash;
+		values[slot] = (byte) value;
+		flags[slot] = flag;
+		bestCells[slot] = (byte) bestCell;
+		depths[slot] = (byte) depth;
+	}
+
+	/**
+	 * Empties the transposition table.
+	 */
+	public synchronized void clearTable() {
+		for (int i = 0; i < keys.length; i++)
+			keys[i] = -1;
+	}
+
+	/**
+	 * @return the number of slots of the transposition table
+	 */
+	public int getTableSize() {
+		return keys.length;
+	}
+
+	/**
+	 * @return the number of games searched by the last {@link #getMove} call
+	 */
+	public synchronized long getNodes() {
+		return nodes;
+	}
+
+	/**
+	 * @return the number of transposition table probes that found their game in the
+	 *         last {@link #getMove} call
+	 */
+	public synchronized long getTableHits() {
+		return tableHits;
+	}
+
+}
@@ -0,0 +1,162 @@
+package ticTacToe;
+
+/**
+ * A dense index of all valid Tic Tac Toe games (see {@link Game#isValid()}),
+ * terminal ones included, for either player to move. Every valid game is mapped
+ * to an int in {@code [0, size())} and back in constant time, so that values,
+ * policies and q-values can be stored in flat arrays indexed by state rather than
+ * in maps keyed by {@link Game} objects.
+ * 
+ * Indices are assigned in increasing order of {@link Game#hashCode()}. The index
+ * is built once per JVM, on first use, and shared: use {@link #get()}.
+ * 
+ */
+public class StateIndex {
+
+	/**
+	 * Maps a game hash to its index, or -1 if the hash is not a valid game.
+	 */
+	private final int[] indexOfHash = new int[Game.NUM_HASHES];
+
+	/**
+	 * Per index: the game hash, the X and O board masks, whose turn it is and the
+	 * game state as returned by {@link Game#evaluateGameState()}.
+	 */
+	private final int[] hash;
+	private final short[] xBoard;
+	private final short[] oBoard;
+	private final char[] whoseTurn;
+	private final byte[] status;
+
+	private StateIndex() {
+		int[] hashes = new int[Game.NUM_HASHES];
+		int n = 0;
+		for (int h = 0; h < Game.NUM_HASHES; h++) {
+			indexOfHash[h] = -1;
+			// last digit is whose turn it is, 0 is not a valid turn
+			int turn = h % 3;
+			if (turn == 0)
+				continue;
+
+			int boards = Game.decodeBoards(h);
+			int xs = boards & Game.FULL_BOARD;
+			int os = boards >>> 9;
+
+			// same checks as Game.isValid()
+			int xCount = Integer.bitCount(xs);
+			int oCount = Integer.bitCount(os);
+			if (Math.abs(xCount - oCount) > 1)
+				continue;
+			if (xCount > oCount && turn == 1)
+				continue;
+			if (xCount < oCount && turn == 2)
+				continue;
+
+			indexOfHash[h] = n;
+			hashes[n++] = h;
+		}
+
+		hash = new int[n];
+		xBoard = new short[n];
+		oBoard = new short[n];
+		whoseTurn = new char[n];
+		status = new byte[n];
+		for (int i = 0; i < n; i++) {
+			int h = hashes[i];
+			hash[i] = h;
+			whoseTurn[i] = (h % 3 == 1) ? 'X' : 'O';
+			int boards = Game.decodeBoards(h);
+			int xs = boards & Game.FULL_BOARD;
+			int os = boards >>> 9;
+			xBoard[i] = (short) xs;
+			oBoard[i] = (short) os;
+			status[i] = (byte) Game.evaluate(xs, os);
+		}
+	}
+
+	/**
+	 * Lazily built, shared instance.
+	 */
+	private static class Holder {
+		static final StateIndex INSTANCE = new StateIndex();
+	}
+
+	/**
+	 * @return the index of all valid games, building it if this is the first call
+	 */
+	public static StateIndex get() {
+		return Holder.INSTANCE;
+	}
+
+	/**
+	 * @return the number of valid games, N
+	 */
+	public int size() {
+		return hash.length;
+	}
+
+	/**
+	 * @param gameHash a game hash as returned by {@link Game#hashCode()}
+	 * @return the index of the game, or -1 if it is not a valid game
+	 */
+	public int indexOf(int gameHash) {
+		if (gameHash < 0 || gameHash >= indexOfHash.length)
+			return -1;
+		return indexOfHash[gameHash];
+	}
+
+	/**
+	 * @return the index of {@code g}, or -1 if it is not a valid game
+	 */
+	public int indexOf(Game g) {
+		return indexOfHash[g.hashCode()];
+	}
+
+	/**
+	 * @return the hash ({@link Game#hashCode()}) of the game at index {@code i}
+	 */
+	public int hashOf(int i) {
+		return hash[i];
+	}
+
+	/**
+	 * @return the X board mask of the game at index {@code i}
+	 */
+	public int xBoard(int i) {
+		return xBoard[i];
+	}
+
+	/**
+	 * @return the O board mask of the game at index {@code i}
+	 */
+	public int oBoard(int i) {
+		return oBoard[i];
+	}
+
+	/**
+	 * @return whose turn it is ('X' or 'O') in the game at index {@code i}
+	 */
+	public char whoseTurn(int i) {
+		return whoseTurn[i];
+	}
+
+	/**
+	 * @return the game state (one of {@link Game#ONGOING}, {@link Game#X_WON},
+	 *         {@link Game#O_WON} or {@link Game#DRAW}) of the game at index
+	 *         {@code i}
+	 */
+	public int status(int i) {
+		return status[i];
+	}
+
+	/**
+	 * @return a new {@link Game} object for the game at index {@code i}, with its
+	 *         state evaluated
+	 */
+	public Game gameAt(int i) {
+		Game g = Game.fromBoards(xBoard[i], oBoard[i], whoseTurn[i]);
+		g.state = status[i];
+		return g;
+	}
+
+}
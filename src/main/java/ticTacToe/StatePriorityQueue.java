@@ -0,0 +1,101 @@
+package ticTacToe;
+
+/**
+ * An indexed binary max-heap of states (ints in {@code [0, n)}) ordered by a
+ * double priority. Unlike {@link java.util.PriorityQueue} the priority of a state
+ * that is already queued can be changed in O(log n), and no objects are
+ * allocated per operation. Used for prioritized sweeping in
+ * {@link ValueIterationAgent}.
+ *
+ */
+class StatePriorityQueue {
+
+	private final int[] heap;
+	private final double[] priority;
+
+	/**
+	 * position of each state in {@link #heap}, or -1 if it is not queued
+	 */
+	private final int[] position;
+	private int size = 0;
+
+	StatePriorityQueue(int n) {
+		heap = new int[n];
+		priority = new double[n];
+		position = new int[n];
+		for (int i = 0; i < n; i++)
+			position[i] = -1;
+	}
+
+	boolean isEmpty() {
+		return size == 0;
+	}
+
+	/**
+	 * Queues state {@code s} with priority {@code p}, or changes its priority to
+	 * {@code p} if it is already queued.
+	 */
+	void update(int s, double p) {
+		if (position[s] < 0) {
+			heap[size] = s;
+			position[s] = size;
+			size++;
+			priority[s] = p;
+			siftUp(position[s]);
+		} else if (p > priority[s]) {
+			priority[s] = p;
+			siftUp(position[s]);
+		} else {
+			priority[s] = p;
+			siftDown(position[s]);
+		}
+	}
+
+	/**
+	 * Removes and returns the state with the highest priority.
+	 */
+	int poll() {
+		int top = heap[0];
+		position[top] = -1;
+		size--;
+		if (size > 0) {
+			heap[0] = heap[size];
+			position[heap[0]] = 0;
+			siftDown(0);
+		}
+		return top;
+	}
+
+	private void siftUp(int i) {
+		int s = heap[i];
+		while (i > 0) {
+			int parent = (i - 1) / 2;
+			if (priority[heap[parent]] >= priority[s])
+				break;
+			heap[i] = heap[parent];
+			position[heap[i]] = i;
+			i = parent;
+		}
+		heap[i] = s;
+		position[s] = i;
+	}
+
+	private void siftDown(int i) {
+		int s = heap[i];
+		while (true) {
+			int child = 2 * i + 1;
+			if (child >= size)
+				break;
+			if (child + 1 < size && priority[heap[child + 1]] > priority[heap[child]])
+				child++;
+			if (priority[heap[child]] <= priority[s])
+				break;
+			heap[i] = heap[child];
+			position[heap[i]] = i;
+			i = child;
+		}
+		heap[i] = s;
+		position[s] = i;
+	}
+
+}
@@ -0,0 +1,47 @@
+package ticTacToe;
+
+import java.util.HashMap;
+
+/**
+ * A policy that only stores moves for canonical games (see
+ * {@link Game#canonical()}). A game is looked up through its canonical form, and
+ * the stored move is mapped back onto the game through the inverse symmetry.
+ * This needs roughly an eighth of the entries of a plain {@link Policy}.
+ * 
+ */
+public class SymmetricPolicy extends Policy {
+
+	/**
+	 * Create policy according to this map, whose keys should all be canonical
+	 * games.
+	 * 
+	 * @param policy
+	 */
+	public SymmetricPolicy(HashMap<Game, Move> policy) {
+		super(policy);
+	}
+
+	public SymmetricPolicy() {
+		super();
+	}
+
+	/**
+	 * Looks up the canonical form of {@code g}, and maps the move stored for it back
+	 * onto {@code g}.
+	 * 
+	 * @param g
+	 * @return the move for {@code g}, or null if its canonical form is not in the
+	 *         policy
+	 */
+	@Override
+	public Move getMove(Game g) {
+		int t = g.canonicalTransform();
+		Move m = policy.get((t == 0) ? g : g.transform(t));
+		if (m == null)
+			return null;
+
+		int k = Symmetry.transformCell(Game.cell(m.x, m.y), Symmetry.inverse(t));
+		return new Move(g.whoseTurn, k / 3, k % 3);
+	}
+
+}
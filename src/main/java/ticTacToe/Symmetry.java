@@ -0,0 +1,95 @@
+package ticTacToe;
+
+/**
+ * The 8 symmetries of the Tic Tac Toe board: the identity, three rotations and
+ * four reflections. Symmetric games have the same value and, up to the same
+ * symmetry, the same best moves, so value functions, policies and q-tables only
+ * need to store one canonical game per class of symmetric games (see
+ * {@link Game#canonical()}).
+ * 
+ * Symmetries are numbered 0 to 7, 0 being the identity.
+ * 
+ */
+public final class Symmetry {
+
+	/**
+	 * The number of symmetries
+	 */
+	public static final int COUNT = 8;
+
+	/**
+	 * {@code CELL_MAP[t][k]} is the cell that cell {@code k} (i.e. (k/3, k%3)) is
+	 * moved to by symmetry {@code t}.
+	 */
+	static final int[][] CELL_MAP = new int[COUNT][9];
+
+	/**
+	 * {@code INVERSE[t]} is the symmetry that undoes symmetry {@code t}.
+	 */
+	static final int[] INVERSE = new int[COUNT];
+
+	static {
+		for (int i = 0; i < 3; i++)
+			for (int j = 0; j < 3; j++) {
+				int k = 3 * i + j;
+				CELL_MAP[0][k] = 3 * i + j; // identity
+				CELL_MAP[1][k] = 3 * j + (2 - i); // rotate 90 degrees clockwise
+				CELL_MAP[2][k] = 3 * (2 - i) + (2 - j); // rotate 180 degrees
+				CELL_MAP[3][k] = 3 * (2 - j) + i; // rotate 270 degrees clockwise
+				CELL_MAP[4][k] = 3 * i + (2 - j); // reflect left-right
+				CELL_MAP[5][k] = 3 * (2 - i) + j; // reflect top-bottom
+				CELL_MAP[6][k] = 3 * j + i; // reflect in the main diagonal
+				CELL_MAP[7][k] = 3 * (2 - j) + (2 - i); // reflect in the anti-diagonal
+			}
+
+		for (int t = 0; t < COUNT; t++)
+			for (int u = 0; u < COUNT; u++)
+				if (CELL_MAP[u][CELL_MAP[t][0]] == 0 && CELL_MAP[u][CELL_MAP[t][1]] == 1
+						&& CELL_MAP[u][CELL_MAP[t][3]] == 3)
+					INVERSE[t] = u;
+	}
+
+	private Symmetry() {
+	}
+
+	/**
+	 * @return the symmetry that undoes symmetry {@code t}
+	 */
+	public static int inverse(int t) {
+		return INVERSE[t];
+	}
+
+	/**
+	 * @return the cell that cell {@code k} is moved to by symmetry {@code t}
+	 */
+	public static int transformCell(int k, int t) {
+		return CELL_MAP[t][k];
+	}
+
+	/**
+	 * Applies symmetry {@code t} to a board mask (see {@link Game#xBoard}).
+	 * 
+	 * @return the transformed mask
+	 */
+	public static int transformBoard(int mask, int t) {
+		int[] map = CELL_MAP[t];
+		int result = 0;
+		for (int k = 0; k < 9; k++)
+			if ((mask & (1 << k)) != 0)
+				result |= 1 << map[k];
+		return result;
+	}
+
+	/**
+	 * Applies symmetry {@code t} to move {@code m}.
+	 * 
+	 * @return a new move by the same agent, or null if {@code m} is null
+	 */
+	public static Move transform(Move m, int t) {
+		if (m == null)
+			return null;
+		int k = CELL_MAP[t][Game.cell(m.x, m.y)];
+		return new Move(m.who, k / 3, k % 3);
+	}
+
+}
@@ -2,7 +2,12 @@ package ticTacToe;
 
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * This class specifies a full MDP for the Tic Tac Toe game, i.e. the Transition Function, T, and the Reward Function R as per your lectures.
@@ -26,8 +31,33 @@ public class TTTMDP {
 	double livingReward=-1.00;
 	double drawReward=0.0;
 	
-	public TTTMDP() {
+	/**
+	 * How the transition cache (see {@link TTTMDP#enableCache}) picks the entry to drop when it is full: the least recently 
+	 * used one, or the oldest one.
+	 */
+	public enum EvictionPolicy { LRU, FIFO }
+	
+	/**
+	 * Optional cache of transition lists, keyed by game hash * 9 + move cell. Null when caching is off (the default).
+	 * The map is accessed under its own lock; the counters are atomic so the getters can read them from any thread.
+	 */
+	private volatile Map<Integer, List<TransitionProb>> cache=null;
+	private final AtomicLong cacheHits=new AtomicLong();
+	private final AtomicLong cacheMisses=new AtomicLong();
 	
+	/**
+	 * The model of the opponent's replies, or null for a uniformly random opponent (the default). 
+	 */
+	final OpponentModel opponent;
+	
+	/**
+	 * The reply distribution of {@link #opponent} in each afterstate (the game after the agent's move), keyed by game 
+	 * hash and computed once.
+	 */
+	private final Map<Integer, double[]> replies=new HashMap<Integer, double[]>();
+	
+	public TTTMDP() {
+		this.opponent=null;
 		
 	}
 
@@ -36,6 +66,32 @@ public class TTTMDP {
 		this.loseReward=lose;
 		this.livingReward=live;
 		this.drawReward=draw;
+		this.opponent=null;
+	}
+	
+	/**
+	 * An MDP with the default rewards where the opponent replies according to {@code opponent} rather than uniformly 
+	 * at random.
+	 * @param opponent
+	 */
+	public TTTMDP(OpponentModel opponent) {
+		this.opponent=opponent;
+	}
+	
+	/**
+	 * An MDP where the opponent plays policy {@code opponent}, see {@link OpponentModel#of(Policy)}. 
+	 * @param opponent
+	 */
+	public TTTMDP(Policy opponent) {
+		this(OpponentModel.of(opponent));
+	}
+	
+	public TTTMDP(double win, double lose, double live, double draw, OpponentModel opponent) {
+		this.winReward=win;
+		this.loseReward=lose;
+		this.livingReward=live;
+		this.drawReward=draw;
+		this.opponent=opponent;
 	}
 	
 	
@@ -43,7 +99,7 @@ public class TTTMDP {
 	 * Generates a list of TransitionProb objects containing game outcomes (source game, move, reward, target game) tuples paired with their
 	 * probabilities. 
 	 * This essentially gives you a uniform probability distribution over all possible resulting game states and rewards when making move {@code m} 
-	 * in game {@code g}. This is implemented for you to use in your Value Iteration and Policy Iteration implementations. 
+	 * in game {@code g}, or the distribution given by the {@link #opponent} model if there is one. This is implemented for you to use in your Value Iteration and Policy Iteration implementations. 
 	 * @param g
 	 * @param m
 	 * @return
@@ -58,12 +114,100 @@ public class TTTMDP {
 			throw new IllegalStateException("Value Iteration Agent is playing O. This will lead to unexpected results. It shouldn't happen.");
 		}
 		
+		Map<Integer, List<TransitionProb>> cache=this.cache;
+		if (cache==null)
+			return computeTransitions(g, m);
+		
+		Integer key=g.hashCode()*9+Game.cell(m.x, m.y);
+		synchronized (cache)
+		{
+			List<TransitionProb> cached=cache.get(key);
+			if (cached!=null)
+			{
+				cacheHits.incrementAndGet();
+				return cached;
+			}
+			cacheMisses.incrementAndGet();
+		}
+		
+		// the cached outcomes outlive this call, so they get their own copy of the source game and move: g belongs to 
+		// the caller, who may go on playing in it
+		List<TransitionProb> result=computeTransitions(g.clone(), new Move(m.who.getName(), m.x, m.y));
+		if (result.isEmpty())
+			return result;//illegal move, don't cache the warning away
+		
+		result=Collections.unmodifiableList(result);
+		synchronized (cache)
+		{
+			cache.put(key, result);
+		}
+		return result;
+		
+	}
+	
+	/**
+	 * Turns on caching in {@link #generateTransitions}: the transition list for a (game, move) pair is computed once, and 
+	 * the same unmodifiable list is returned for later requests for an equal pair, until it is evicted. The {@link Game}s, 
+	 * {@link Outcome}s and {@link TransitionProb}s in a cached list are shared by all callers, so they must not be changed.
+	 * Any existing cache and its counters are cleared.
+	 * 
+	 * @param capacity the maximum number of (game, move) pairs to keep
+	 * @param eviction which entry to drop when the cache is full
+	 */
+	public void enableCache(final int capacity, EvictionPolicy eviction)
+	{
+		if (capacity<1)
+			throw new IllegalArgumentException("Cache capacity should be at least 1");
+		
+		this.cacheHits.set(0);
+		this.cacheMisses.set(0);
+		this.cache=new LinkedHashMap<Integer, List<TransitionProb>>(16, 0.75f, eviction==EvictionPolicy.LRU) {
+			private static final long serialVersionUID = 1L;
+			
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Integer, List<TransitionProb>> eldest)
+			{
+				return size()>capacity;
+			}
+		};
+	}
+	
+	/**
+	 * Turns off caching in {@link #generateTransitions}, dropping all cached transitions.
+	 */
+	public void disableCache()
+	{
+		this.cache=null;
+	}
+	
+	/**
+	 * @return the number of {@link #generateTransitions} calls answered from the cache since it was enabled
+	 */
+	public long getCacheHits()
+	{
+		return cacheHits.get();
+	}
+	
+	/**
+	 * @return the number of {@link #generateTransitions} calls that had to compute their transitions since the cache 
+	 * was enabled
+	 */
+	public long getCacheMisses()
+	{
+		return cacheMisses.get();
+	}
+	
+	/**
+	 * Does the work of {@link #generateTransitions}, always building a new list.
+	 */
+	private List<TransitionProb> computeTransitions(Game g, Move m)
+	{
 		List<TransitionProb> result=new ArrayList<TransitionProb>();
 		//first simulate move m
 		
-		Game intermediate=null;
+		Game intermediate=g.clone();
 		try {
-			intermediate=g.simulateMove(m);
+			intermediate.push(m);
 		}
 		catch(IllegalMoveException e)
 		{
@@ -96,6 +240,9 @@ public class TTTMDP {
 		}
 		
 		
+		if (opponent!=null)
+			return opponentTransitions(g, m, intermediate, result);
+		
 		//If we are here equal chance that the opponent will move into the available places.
 		//we generate simulate all these, and associate them with equal probability
 		
@@ -137,6 +284,113 @@ public class TTTMDP {
 	
 	
 	
+	/**
+	 * Like the end of {@link #computeTransitions}, for an {@link #opponent} model: one transition for each reply the 
+	 * opponent plays with non-zero probability in {@code intermediate}.
+	 */
+	private List<TransitionProb> opponentTransitions(Game g, Move m, Game intermediate, List<TransitionProb> result)
+	{
+		double[] prob=replyDistribution(intermediate);
+		for(int k=0;k<9;k++)
+		{
+			if (prob[k]==0)
+				continue;
+			Game game=intermediate.clone();
+			try {
+				game.push(k/3, k%3);
+			}
+			catch(IllegalMoveException e)
+			{
+				throw new IllegalStateException("The opponent model gave a probability to an illegal move in:"+intermediate);
+			}
+			double reward;
+			if(game.getState()==Game.O_WON)
+				reward=this.loseReward;
+			else if (game.getState()==Game.DRAW)
+				reward=this.drawReward;
+			else
+				reward=this.livingReward;
+			
+			result.add(new TransitionProb(new Outcome(g, m, reward, game), prob[k]));
+		}
+		return result;
+	}
+	
+	/**
+	 * @return the reply distribution of the {@link #opponent} in afterstate {@code g}, computed on the first request 
+	 * and shared after that, so it must not be changed
+	 */
+	private double[] replyDistribution(Game g)
+	{
+		Integer key=g.hashCode();
+		synchronized (replies)
+		{
+			double[] prob=replies.get(key);
+			if (prob==null)
+			{
+				prob=opponent.replyDistribution(g.clone());
+				replies.put(key, prob);
+			}
+			return prob;
+		}
+	}
+	
+	/**
+	 * The compiled form of this MDP, built by the first call to {@link #compile()}.
+	 */
+	private CompiledMDP compiled;
+	
+	/**
+	 * Compiles this MDP into flat arrays of states, actions and transitions (see {@link CompiledMDP}) that planning 
+	 * agents can sweep instead of calling {@link #generateTransitions} over and over. The model is compiled on the first 
+	 * call and shared by later ones, so the rewards of this MDP should not be changed after that.
+	 * @return the compiled model
+	 */
+	public synchronized CompiledMDP compile()
+	{
+		if (compiled==null)
+			compiled=new CompiledMDP(this);
+		
+		return compiled;
+	}
+	
+	/**
+	 * Like {@link #compile()}, but if this MDP has not been compiled yet it is compiled from {@code model}, the 
+	 * compiled form of another MDP with the same {@link #opponent}: only the rewards are recomputed, see {@link CompiledMDP#withRewards}. Used when 
+	 * re-planning after the rewards change. Only the rewards may differ between the two MDPs; the transitions of 
+	 * {@code model} are reused as they are, so the returned model has the same states as {@code model}.
+	 * @param model a model compiled from a {@link TTTMDP} with the same opponent
+	 * @return the compiled model
+	 * @throws IllegalArgumentException if {@code model} was compiled for another opponent
+	 */
+	public synchronized CompiledMDP compileFrom(CompiledMDP model)
+	{
+		if (!model.sameDynamics(this))
+			throw new IllegalArgumentException("Can only recompile a model of the same opponent; use compile() instead");
+		if (compiled==null)
+			compiled=model.withRewards(this);
+		return compiled;
+	}
+	
+	/**
+	 * @return the reward of a transition into a game whose state is {@code status}, one of {@link Game#X_WON}, 
+	 * {@link Game#O_WON}, {@link Game#DRAW} or {@link Game#ONGOING}, as given by {@link #generateTransitions}
+	 */
+	double rewardFor(int status)
+	{
+		switch (status)
+		{
+		case Game.X_WON:
+			return this.winReward;
+		case Game.O_WON:
+			return this.loseReward;
+		case Game.DRAW:
+			return this.drawReward;
+		default:
+			return this.livingReward;
+		}
+	}
+	
 	public boolean isTerminal(Game g)
 	{
 		return g.isTerminal();
@@ -0,0 +1,209 @@
+package ticTacToe;
+
+import java.util.HashMap;
+
+/**
+ * Solves the Tic Tac Toe MDP for both seats at once: the best policy for X
+ * against the opponent of a {@link TTTMDP}, and the best policy for O against
+ * the same kind of opponent playing X. {@link TTTMDP} itself only models X.
+ *
+ * Both are solved in a single backward pass over every valid game of
+ * {@link StateIndex}, for either player to move and either player starting,
+ * from full boards back to the empty board. Each game gets a value for each
+ * side: for the side to move it is the value of its best move, for the other
+ * side it is the expected value of the opponent's reply. With the same rewards
+ * and discount, the X values are those of a {@link ValueIterationAgent}. The O
+ * side gets the rewards with the roles swapped: {@link TTTMDP#winReward} when O
+ * wins, {@link TTTMDP#loseReward} when X wins.
+ *
+ */
+public class TwoSidedSolver {
+
+	/**
+	 * The value of each game of {@link StateIndex} for the X player and for the O
+	 * player, by index. 0 for terminal games.
+	 */
+	final double[] xValues;
+	final double[] oValues;
+
+	/**
+	 * The best cell of each game for the player whose turn it is, -1 for terminal
+	 * games
+	 */
+	final byte[] bestCell;
+
+	final TTTMDP mdp;
+	final double discount;
+
+	private final Policy xPolicy;
+	private final Policy oPolicy;
+
+	/**
+	 * Solves both sides of the default {@link TTTMDP}, with discount 0.9
+	 */
+	public TwoSidedSolver() {
+		this(new TTTMDP(), 0.9);
+	}
+
+	/**
+	 * Solves both sides of {@code mdp}, using its rewards and its opponent model
+	 * (uniformly random if it has none) for whichever side the agent does not
+	 * play.
+	 *
+	 * @param mdp
+	 * @param discount
+	 */
+	public TwoSidedSolver(TTTMDP mdp, double discount) {
+		this.mdp = mdp;
+		this.discount = discount;
+		StateIndex index = StateIndex.get();
+		int n = index.size();
+		xValues = new double[n];
+		oValues = new double[n];
+		bestCell = new byte[n];
+
+		OpponentModel opponent = (mdp.opponent == null) ? OpponentModel.UNIFORM : mdp.opponent;
+		double[] reply = new double[9];
+		HashMap<Game, Move> xMoves = new HashMap<Game, Move>();
+		HashMap<Game, Move> oMoves = new HashMap<Game, Move>();
+
+		for (int i : reverseTopologicalOrder(index)) {
+			bestCell[i] = -1;
+			if (index.status(i) != Game.ONGOING)
+				continue;
+
+			boolean xToMove = index.whoseTurn(i) == 'X';
+			int empty = ~(index.xBoard(i) | index.oBoard(i)) & Game.FULL_BOARD;
+
+			// the player to move picks its best move, the other player's value is the
+			// expectation over the opponent model
+			Game g = index.gameAt(i);
+			opponent.replyDistribution(g, reply);
+
+			double best = Double.NEGATIVE_INFINITY;
+			double expected = 0.0;
+			for (int k = 0; k < 9; k++) {
+				if ((empty & (1 << k)) == 0)
+					continue;
+				int child = child(index, i, k, xToMove);
+				int status = index.status(child);
+
+				// the mover's value of playing k: the rewards of a win or a draw end the
+				// game, otherwise it is the value of the position the opponent replies in
+				double own = xToMove ? xValues[child] : oValues[child];
+				if (status != Game.ONGOING)
+					own = rewardFor(status, xToMove);
+				if (own > best) {
+					best = own;
+					bestCell[i] = (byte) k;
+				}
+
+				// the other player's value of the opponent playing k
+				if (reply[k] != 0) {
+					double other = xToMove ? oValues[child] : xValues[child];
+					expected += reply[k] * (rewardFor(status, !xToMove) + discount * other);
+				}
+			}
+
+			if (xToMove) {
+				xValues[i] = best;
+				oValues[i] = expected;
+				xMoves.put(g, new Move('X', bestCell[i] / 3, bestCell[i] % 3));
+			} else {
+				oValues[i] = best;
+				xValues[i] = expected;
+				oMoves.put(g, new Move('O', bestCell[i] / 3, bestCell[i] % 3));
+			}
+		}
+
+		xPolicy = new Policy(xMoves);
+		oPolicy = new Policy(oMoves);
+	}
+
+	/**
+	 * @return the index of the game reached when the player to move in game
+	 *         {@code i} plays cell {@code k}
+	 */
+	private static int child(StateIndex index, int i, int k, boolean xToMove) {
+		// the cell's digit becomes 1 (X) or 2 (O), and the turn digit flips
+		int hash = index.hashOf(i) + Game.CELL_WEIGHTS[k] * (xToMove ? 1 : 2) + (xToMove ? 1 : -1);
+		return index.indexOf(hash);
+	}
+
+	/**
+	 * @return the reward, for the X player if {@code forX} and for the O player
+	 *         otherwise, of a move that leads to a game with status {@code status}
+	 */
+	private double rewardFor(int status, boolean forX) {
+		switch (status) {
+		case Game.X_WON:
+			return forX ? mdp.winReward : mdp.loseReward;
+		case Game.O_WON:
+			return forX ? mdp.loseReward : mdp.winReward;
+		case Game.DRAW:
+			return mdp.drawReward;
+		default:
+			return mdp.livingReward;
+		}
+	}
+
+	/**
+	 * @return all games of {@code index}, by decreasing number of pieces
+	 */
+	private static int[] reverseTopologicalOrder(StateIndex index) {
+		int n = index.size();
+		int[] start = new int[11];
+		for (int i = 0; i < n; i++)
+			start[9 - Integer.bitCount(index.xBoard(i) | index.oBoard(i)) + 1]++;
+		for (int p = 0; p < 10; p++)
+			start[p + 1] += start[p];
+
+		int[] order = new int[n];
+		for (int i = 0; i < n; i++)
+			order[start[9 - Integer.bitCount(index.xBoard(i) | index.oBoard(i))]++] = i;
+		return order;
+	}
+
+	/**
+	 * @return the best policy for the X player
+	 */
+	public Policy getXPolicy() {
+		return xPolicy;
+	}
+
+	/**
+	 * @return the best policy for the O player
+	 */
+	public Policy getOPolicy() {
+		return oPolicy;
+	}
+
+	/**
+	 * @return the best policy for player {@code side}, 'X' or 'O'
+	 */
+	public Policy getPolicy(char side) {
+		return (side == 'X') ? xPolicy : oPolicy;
+	}
+
+	/**
+	 * @return the value of {@code g} for the X player
+	 */
+	public double getXValue(Game g) {
+		return xValues[indexOf(g)];
+	}
+
+	/**
+	 * @return the value of {@code g} for the O player
+	 */
+	public double getOValue(Game g) {
+		return oValues[indexOf(g)];
+	}
+
+	private int indexOf(Game g) {
+		int i = StateIndex.get().indexOf(g);
+		if (i < 0)
+			throw new IllegalArgumentException("Not a valid game: " + g);
+		return i;
+	}
+
+}
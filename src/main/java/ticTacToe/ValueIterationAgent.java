@@ -1,8 +1,7 @@
 package ticTacToe;
 
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * A Value Iteration Agent, only very partially implemented. The methods to
@@ -19,9 +18,12 @@ import java.util.Map;
 public class ValueIterationAgent extends Agent {
 
 	/**
-	 * This map is used to store the values of states
+	 * This array is used to store the values of states, indexed by the state
+	 * numbers of {@link #model}. Only canonical states (see
+	 * {@link Game#canonical()}) are stored: symmetric states have the same value,
+	 * unless the opponent model of the {@link #mdp} is not symmetric.
 	 */
-	Map<Game, Double> valueFunction = new HashMap<Game, Double>();
+	double[] valueFunction;
 
 	/**
 	 * the discount factor
@@ -34,10 +36,71 @@ public class ValueIterationAgent extends Agent {
 	TTTMDP mdp = new TTTMDP();
 
 	/**
-	 * the number of iterations to perform - feel free to change this/try out
-	 * different numbers of iterations
+	 * the MDP model compiled into flat arrays, which the value iteration sweeps.
+	 * See {@link TTTMDP#compile()}
 	 */
-	int k = 10;
+	CompiledMDP model;
+
+	/**
+	 * the maximum number of iterations to perform - feel free to change this/try
+	 * out different numbers of iterations. Value iteration usually stops earlier,
+	 * see {@link #epsilon}
+	 */
+	int k = 100;
+
+	/**
+	 * Value iteration stops when the residual of a sweep, i.e. the largest change
+	 * in the value of any state, is below this.
+	 */
+	double epsilon = 1e-9;
+
+	/**
+	 * the number of sweeps done by the last {@link #iterate()}, and the residual of
+	 * each of them (only the first {@code sweeps} entries are used).
+	 */
+	int sweeps = 0;
+	double[] residuals = new double[0];
+
+	/**
+	 * the number of Bellman backups of non-terminal states done by the last
+	 * {@link #iterate()}
+	 */
+	long backups = 0;
+
+	/**
+	 * How {@link #iterate()} updates the values:
+	 * <ul>
+	 * <li>{@code JACOBI}: synchronous sweeps, reading the values of the previous
+	 * sweep and writing new ones to a second array.</li>
+	 * <li>{@code GAUSS_SEIDEL}: in-place sweeps, so later states in a sweep already
+	 * see the new values of earlier ones.</li>
+	 * <li>{@code PRIORITIZED}: prioritized sweeping. States are backed up one at a
+	 * time, largest Bellman error first, and only the predecessors of a state whose
+	 * value changed are re-checked.</li>
+	 * <li>{@code PARALLEL}: synchronous sweeps like {@code JACOBI}, with the states
+	 * of each sweep split into ranges that are backed up in parallel on
+	 * {@link #pool}, and the sweep residual reduced from the ranges. Policy
+	 * extraction is parallel too.</li>
+	 * <li>{@code RETROGRADE}: backward induction. The states are visited once, from
+	 * full boards back to the empty board, so every state is backed up exactly once,
+	 * after all of its successors (see
+	 * {@link CompiledMDP#reverseTopologicalOrder()}). This gives the values that
+	 * the other modes converge to, in a single pass.</li>
+	 * </ul>
+	 */
+	public enum Mode {
+		JACOBI, GAUSS_SEIDEL, PRIORITIZED, PARALLEL, RETROGRADE
+	}
+
+	/**
+	 * The update scheme used by {@link #iterate()}
+	 */
+	Mode mode = Mode.JACOBI;
+
+	/**
+	 * The pool used in {@link Mode#PARALLEL} mode
+	 */
+	ForkJoinPool pool = ForkJoinPool.commonPool();
 
 	/**
 	 * This constructor trains the agent offline first and sets its policy
@@ -69,19 +132,47 @@ public class ValueIterationAgent extends Agent {
 	}
 
 	/**
-	 * Initialises the {@link ValueIterationAgent#valueFunction} map, and sets the
-	 * initial value of all states to 0
-	 * (V0 from the lectures). Uses {@link Game#inverseHash} and
-	 * {@link Game#generateAllValidGames(char)} to do this.
+	 * Trains the agent with the update scheme {@code mode}, see {@link Mode}.
+	 * 
+	 * @param discountFactor
+	 * @param mode
+	 */
+	public ValueIterationAgent(double discountFactor, Mode mode) {
+
+		this.discount = discountFactor;
+		this.mode = mode;
+		mdp = new TTTMDP();
+		initValues();
+		train();
+	}
+
+	/**
+	 * Trains the agent on {@code mdp}, e.g. a {@link TTTMDP} with an
+	 * {@link OpponentModel}.
+	 * 
+	 * @param discountFactor
+	 * @param mdp
+	 */
+	public ValueIterationAgent(double discountFactor, TTTMDP mdp) {
+
+		this.discount = discountFactor;
+		this.mdp = mdp;
+		initValues();
+		train();
+	}
+
+	/**
+	 * Compiles the {@link #mdp} and initialises the
+	 * {@link ValueIterationAgent#valueFunction} array, setting the initial value of
+	 * all (canonical) states to 0 (V0 from the lectures).
 	 * 
 	 */
 	public void initValues() {
 
-		List<Game> allGames = Game.generateAllValidGames('X');// all valid games where it is X's turn, or it's terminal.
-		for (Game g : allGames)
-			this.valueFunction.put(g, 0.0);
-		// loops throught games when its X chance to play and adds game state and
-		// 0(intial value) to value func(map)
+		// the states are all valid canonical games where it is X's turn, or it's
+		// terminal.
+		this.model = mdp.compile();
+		this.valueFunction = new double[model.numStates()];
 
 	}
 
@@ -91,153 +182,284 @@ public class ValueIterationAgent extends Agent {
 		mdp = new TTTMDP(winReward, loseReward, livingReward, drawReward);
 	}
 
-	// helper functions:
-	// helper function to calculate the expected value of a move
-	// used in findBestMove(another helper function) and iterate
+	/**
+	 * Re-plans after the MDP parameters change: solves {@code mdp} with discount
+	 * {@code discountFactor}, starting from the current values rather than from 0.
+	 * The model is recompiled from the current one, so only the rewards are
+	 * recomputed (see {@link TTTMDP#compileFrom}). After a small change the values
+	 * are already close, so the iteration converges in a few sweeps. The new policy
+	 * is extracted as in {@link #train()}. If {@code mdp} has another opponent, its
+	 * model has other states, so the values can't be reused and it is solved from
+	 * scratch instead.
+	 * 
+	 * @param mdp
+	 * @param discountFactor
+	 */
+	public void replan(TTTMDP mdp, double discountFactor) {
+		this.mdp = mdp;
+		this.discount = discountFactor;
+
+		// nothing to start from (e.g. the agent was never trained), or the values are
+		// of other states (another opponent): a cold start
+		if (model == null || valueFunction == null || !model.sameDynamics(mdp)) {
+			initValues();
+		} else
+			this.model = mdp.compileFrom(model);
 
-	private double calculateExpectedValue(Game state, Move move, Map<Game, Double> currentValues) {
+		train();
+	}
 
-		// intitalizimg the expected value to 0
-		double expectedValue = 0.0;
+	/**
+	 * @return the current value of game {@code g}, through its canonical form
+	 */
+	public double getValue(Game g) {
+		int s = model.stateOf(g);
+		if (s < 0)
+			throw new IllegalArgumentException("Not a state of the MDP: " + g);
+		return valueFunction[s];
+	}
 
-		// Get all the possible transitions for the move from generateTransitions in
-		// TTTMDP(gives poss states, rewards and probabilities)
-		List<TransitionProb> transitions = mdp.generateTransitions(state, move);
+	/**
+	 * Performs value iteration until the values converge: until the residual (the
+	 * largest change in any state's value) of a sweep falls below {@link #epsilon},
+	 * or {@link #k} sweeps have been done. After running this method, the
+	 * {@link ValueIterationAgent#valueFunction} array should contain
+	 * the (current) values of each reachable state. This sweeps the
+	 * {@link TTTMDP} provided, compiled into {@link #model}, according to
+	 * {@link #mode}.
+	 *
+	 */
+	public void iterate() {
+		backups = 0;
+		switch (mode) {
+		case GAUSS_SEIDEL:
+			iterateInPlace();
+			break;
+		case PRIORITIZED:
+			prioritizedSweeping();
+			break;
+		case PARALLEL:
+			iterateInParallel();
+			break;
+		case RETROGRADE:
+			solveBackwards();
+			break;
+		default:
+			iterateSynchronously();
+		}
+	}
 
-		// loop through all the possible transitions
-		for (TransitionProb transition : transitions) {
+	/**
+	 * Jacobi-style value iteration: each sweep reads the values of the previous
+	 * sweep from one array and writes the new values to a second one, and the two
+	 * arrays are swapped after each sweep.
+	 */
+	private void iterateSynchronously() {
+		// the second buffer; values are read from valueFunction and written here.
+		// Terminal states keep their value, so they are copied once.
+		double[] updatedStateValues = valueFunction.clone();
+		residuals = new double[k];
+		sweeps = 0;
+
+		// loop for at most k number of iterations
+		for (int iteration = 0; iteration < k; iteration++) {
 
-			// getting next staate
-			Game nextState = transition.outcome.sPrime;
+			double residual = 0.0;
 
-			// getting the reward
-			double reward = transition.outcome.localReward;
+			// a Bellman backup of each state: the value of its best move, under the
+			// values of the previous iteration.
+			for (int s = 0; s < model.numStates(); s++) {
+				if (model.isTerminal(s))
+					continue;
+				double value = model.backup(s, valueFunction, discount);
+				residual = Math.max(residual, Math.abs(value - valueFunction[s]));
+				updatedStateValues[s] = value;
+				backups++;
+			}
 
-			// getting probability of the transition
-			double Prob = transition.prob;
+			// after all the states are done we swap the buffers, so valueFunction has
+			// the new values
+			double[] previous = valueFunction;
+			valueFunction = updatedStateValues;
+			updatedStateValues = previous;
 
-			// calculating the expected value and adding it to expectedValue
-			expectedValue += Prob * (reward + discount * currentValues.get(nextState));
+			residuals[sweeps++] = residual;
+			if (residual < epsilon)
+				break;
 		}
-		// returning the calculated exoected value
-		return expectedValue;
 	}
 
-	// helper function to find the best move from given state based on current value
-	// used in extract policy
-	// checks all possible moves adn returns one with highest expected value
-	private Move findBestMove(Game state, Map<Game, Double> currentValues) {
-
-		// initializing bestMove to null -- will store the move with highest value
-		Move bestMove = null;
+	/**
+	 * Parallel value iteration: the same double-buffered sweeps as
+	 * {@link #iterateSynchronously()}, but each sweep is split into ranges of
+	 * states that are backed up on {@link #pool}. Each range writes only its own
+	 * states in the second buffer, and returns its largest change, so the only
+	 * shared result is the max reduction of the residual.
+	 */
+	private void iterateInParallel() {
+		final int n = model.numStates();
+		double[] updatedStateValues = valueFunction.clone();
+		residuals = new double[k];
+		sweeps = 0;
 
-		// intializing maximumValue to -10000(very low value) so any move will be better
-		double maximumValue = -10000;
+		long nonTerminal = 0;
+		for (int s = 0; s < n; s++)
+			if (!model.isTerminal(s))
+				nonTerminal++;
 
-		// Check each possible move in current state
-		for (Move move : state.getPossibleMoves()) {
+		for (int iteration = 0; iteration < k; iteration++) {
+			final double[] in = valueFunction;
+			final double[] out = updatedStateValues;
+			double residual = ParallelStates.max(pool, n, (from, to) -> {
+				double max = 0.0;
+				for (int s = from; s < to; s++) {
+					if (model.isTerminal(s))
+						continue;
+					double value = model.backup(s, in, discount);
+					max = Math.max(max, Math.abs(value - in[s]));
+					out[s] = value;
+				}
+				return max;
+			});
+			backups += nonTerminal;
 
-			// calculate expected value of current move using the first helper function
-			double moveValue = calculateExpectedValue(state, move, currentValues);
+			// swap the buffers
+			valueFunction = out;
+			updatedStateValues = in;
 
-			// if the expected value of the move is greater than current max value update
-			// best move to this move and max value to the move value
-			if (moveValue > maximumValue) {
-				maximumValue = moveValue;
-				bestMove = move;
-			}
+			residuals[sweeps++] = residual;
+			if (residual < epsilon)
+				break;
 		}
-		// return the best move with highest expected value
-		return bestMove;
 	}
 
 	/**
-	 * 
-	 * 
-	 * /*
-	 * Performs {@link #k} value iteration steps. After running this method, the
-	 * {@link ValueIterationAgent#valueFunction} map should contain
-	 * the (current) values of each reachable state. You should use the
-	 * {@link TTTMDP} provided to do this.
-	 * 
-	 *
+	 * Retrograde analysis: a single in-place pass over the states in reverse
+	 * topological order, so each state is backed up once, when the values of all of
+	 * its successors are final. Counts as one sweep.
 	 */
-	public void iterate() {
-		// loop for k number of iterations
-		for (int iteration = 0; iteration < k; iteration++) {
+	private void solveBackwards() {
+		double residual = 0.0;
+		for (int s : model.reverseTopologicalOrder()) {
+			if (model.isTerminal(s))
+				continue;
+			double value = model.backup(s, valueFunction, discount);
+			residual = Math.max(residual, Math.abs(value - valueFunction[s]));
+			valueFunction[s] = value;
+			backups++;
+		}
+		residuals = new double[] { residual };
+		sweeps = 1;
+	}
 
-			// creating a temporary map to store those updated state values during the
-			// iteration
-			Map<Game, Double> updatedStateValues = new HashMap<>();
+	/**
+	 * Gauss-Seidel value iteration: like {@link #iterateSynchronously()}, but the
+	 * values are updated in place, so each backup uses the newest values available.
+	 */
+	private void iterateInPlace() {
+		residuals = new double[k];
+		sweeps = 0;
 
-			// Loop through each game state in the current value function
-			for (Game currentState : valueFunction.keySet()) {
+		for (int iteration = 0; iteration < k; iteration++) {
 
-				// if the current state is terminal (that is end of the game) the value will not
-				// change
-				// we copy the value from valueFunction to updatedStateValues and continue
-				if (currentState.isTerminal()) {
-					updatedStateValues.put(currentState, valueFunction.get(currentState));
+			double residual = 0.0;
+			for (int s = 0; s < model.numStates(); s++) {
+				if (model.isTerminal(s))
 					continue;
-				}
-
-				// initializing maximumValue to -10000(very low value) so any move will be
-				// better
-				double maximumValue = -10000;
+				double value = model.backup(s, valueFunction, discount);
+				residual = Math.max(residual, Math.abs(value - valueFunction[s]));
+				valueFunction[s] = value;
+				backups++;
+			}
 
-				// for each possible move in the current state
-				for (Move move : currentState.getPossibleMoves()) {
+			residuals[sweeps++] = residual;
+			if (residual < epsilon)
+				break;
+		}
+	}
 
-					// we call calculateExpectedValue to get the expected value of that move
-					double moveValue = calculateExpectedValue(currentState, move, valueFunction);
+	/**
+	 * Prioritized sweeping: every state whose Bellman error (the change a backup
+	 * would make to its value) is at least {@link #epsilon} is queued by error. The
+	 * state with the largest error is backed up, and the errors of its
+	 * predecessors, the only states whose backups can have changed, are
+	 * recomputed. This stops when the queue is empty, or after the number of
+	 * backups of {@link #k} sweeps. There are no sweeps, so {@link #sweeps} is 0.
+	 */
+	private void prioritizedSweeping() {
+		int n = model.numStates();
+		int[] predecessorStart = model.predecessorStart();
+		int[] predecessors = model.predecessors();
+		StatePriorityQueue queue = new StatePriorityQueue(n);
+		residuals = new double[0];
+		sweeps = 0;
+
+		for (int s = 0; s < n; s++) {
+			if (model.isTerminal(s))
+				continue;
+			double error = Math.abs(model.backup(s, valueFunction, discount) - valueFunction[s]);
+			if (error >= epsilon)
+				queue.update(s, error);
+		}
 
-					// updating maximum value if this moves value is greater than the current
-					// maximum we have
-					maximumValue = Math.max(maximumValue, moveValue);
-				}
-				// we store the highest value ( that is the best moves expected value) for this
-				// state in the updated map
-				updatedStateValues.put(currentState, maximumValue);
+		long maxBackups = (long) k * n;
+		while (!queue.isEmpty() && backups < maxBackups) {
+			int s = queue.poll();
+			valueFunction[s] = model.backup(s, valueFunction, discount);
+			backups++;
+
+			for (int i = predecessorStart[s]; i < predecessorStart[s + 1]; i++) {
+				int p = predecessors[i];
+				double error = Math.abs(model.backup(p, valueFunction, discount) - valueFunction[p]);
+				if (error >= epsilon)
+					queue.update(p, error);
 			}
-			// after all the states are dome we update valueFunction with those new values
-			valueFunction = updatedStateValues;
 		}
 	}
 
+	/**
+	 * @return the number of sweeps done by the last {@link #iterate()}
+	 */
+	public int getSweeps() {
+		return sweeps;
+	}
+
+	/**
+	 * @return the residual (largest change in a state's value) of each sweep done
+	 *         by the last {@link #iterate()}
+	 */
+	public double[] getResiduals() {
+		return Arrays.copyOf(residuals, sweeps);
+	}
+
+	/**
+	 * @return the number of Bellman backups of non-terminal states done by the last
+	 *         {@link #iterate()}
+	 */
+	public long getBackups() {
+		return backups;
+	}
+
 	/**
 	 * This method should be run AFTER the train method to extract a policy
 	 * according to {@link ValueIterationAgent#valueFunction}
-	 * You will need to do a single step of expectimax from each game (state) key in
+	 * You will need to do a single step of expectimax from each game (state) in
 	 * {@link ValueIterationAgent#valueFunction}
 	 * to extract a policy.
 	 * 
 	 * @return the policy according to {@link ValueIterationAgent#valueFunction}
 	 */
 	public Policy extractPolicy() {
-		// initializing a new policy object to storee the mapping of states to their
-		// best moves
-		Policy policy = new Policy();
-
-		// looping through each state in value function
-		for (Game state : valueFunction.keySet()) {
-
-			// skippinf terminal state becuase end-state doesnt need any more moves(game is
-			// already finished)
-			if (state.isTerminal()) {
-				continue;
-			}
-			// use findBestMove helper function to find the best move for current state
-			Move bestMove = findBestMove(state, valueFunction);
-
-			// if the hepler finds a best move i.e not null
-			if (bestMove != null) {
-
-				// best move is added to the new policy
-				policy.policy.put(state, bestMove);
-			}
-		}
-		// returning the policy with best moves for each state
-		return policy;
+		// the best move of each non-terminal state. The value function only has
+		// canonical states, so the policy maps other states onto them
+		if (mode != Mode.PARALLEL)
+			return model.extractPolicy(valueFunction, discount);
+
+		// in parallel mode, find the best moves in parallel first
+		final double[] values = valueFunction;
+		final int[] bestMoves = new int[model.numStates()];
+		ParallelStates.forEach(pool, bestMoves.length, s -> bestMoves[s] = model.bestAction(s, values, discount));
+		return model.toPolicy(bestMoves);
 	}
 
 	/**
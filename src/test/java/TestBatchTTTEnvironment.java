@@ -0,0 +1,111 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import ticTacToe.BatchTTTEnvironment;
+import ticTacToe.Game;
+import ticTacToe.OpponentModel;
+import ticTacToe.StateIndex;
+
+public class TestBatchTTTEnvironment {
+	@Test
+	public void testRandomGames() {
+		checkLockstep(new BatchTTTEnvironment(500));
+	}
+
+	@Test
+	public void testOpponentModel() {
+		checkLockstep(new BatchTTTEnvironment(500, OpponentModel.aggressive()));
+	}
+
+	@Test
+	public void testIllegalMoveChangesNothing() {
+		BatchTTTEnvironment env=new BatchTTTEnvironment(10);
+		int[] cells=new int[10];
+		int[] replies=new int[10];
+		double[] rewards=new double[10];
+		env.step(cells, replies, rewards);
+		
+		int[] x=new int[10];
+		int[] o=new int[10];
+		int[] states=new int[10];
+		for (int i=0;i<10;i++) {
+			x[i]=env.getXBoard(i);
+			o[i]=env.getOBoard(i);
+			states[i]=env.getStateIndex(i);
+			cells[i]=Integer.numberOfTrailingZeros(env.getLegalMoves(i));
+			replies[i]=-2;
+			rewards[i]=7.0;
+		}
+		// the last game replays the first move's cell, which is taken
+		cells[9]=0;
+		try {
+			env.step(cells, replies, rewards);
+			assertTrue("Stepped with an illegal move", false);
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+		for (int i=0;i<10;i++) {
+			assertEquals(x[i], env.getXBoard(i));
+			assertEquals(o[i], env.getOBoard(i));
+			assertEquals(states[i], env.getStateIndex(i));
+			assertEquals(-2, replies[i]);
+			assertEquals(7.0, rewards[i], 0.0);
+		}
+	}
+	
+	/**
+	 * Plays every game of {@code env} to the end with X playing its first empty cell, and checks the rewards and
+	 * states after every step.
+	 */
+	private static void checkLockstep(BatchTTTEnvironment env) {
+		int n=env.size();
+		int[] cells=new int[n];
+		int[] replies=new int[n];
+		double[] rewards=new double[n];
+
+		int steps=0;
+		int ongoing=n;
+		boolean[] played=new boolean[n];
+		while (ongoing>0)
+		{
+			for(int i=0;i<n;i++)
+			{
+				played[i]=!env.isTerminal(i);
+				if (played[i])
+					cells[i]=Integer.numberOfTrailingZeros(env.getLegalMoves(i));
+			}
+			ongoing=env.step(cells, replies, rewards);
+			steps++;
+
+			int counted=0;
+			for(int i=0;i<n;i++)
+			{
+				int status=env.getStatus(i);
+				assertTrue(StateIndex.get().indexOf(env.toGame(i))==env.getStateIndex(i));
+				assertTrue(env.getStateIndex(i)>=0);
+				if (!played[i])
+					assertEquals(0.0, rewards[i], 0.0);
+				else if (status==Game.ONGOING)
+				{
+					counted++;
+					assertEquals(-1.0, rewards[i], 0.0);
+					assertTrue(replies[i]>=0);
+				}
+				else if (status==Game.O_WON)
+					assertEquals(-50.0, rewards[i], 0.0);
+				else if (status==Game.X_WON)
+					assertEquals(10.0, rewards[i], 0.0);
+				assertEquals(0, env.getLegalMoves(i) & (env.getXBoard(i) | env.getOBoard(i)));
+			}
+			assertEquals(counted, ongoing);
+		}
+		assertTrue(steps<=5);
+
+		env.reset();
+		for(int i=0;i<n;i++)
+			assertEquals(0x1FF, env.getLegalMoves(i));
+	}
+
+}
@@ -0,0 +1,228 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import ticTacToe.AggressivePolicy;
+import ticTacToe.DefensivePolicy;
+import ticTacToe.Game;
+import ticTacToe.IllegalMoveException;
+import ticTacToe.Move;
+
+public class TestGame {
+	@Test
+	public void testPushPop() throws IllegalMoveException {
+		Game g=new Game();
+		Game start=g.clone();
+		
+		// X wins on the diagonal
+		int[][] moves={ {0,0}, {0,1}, {1,1}, {0,2}, {2,2} };
+		Game[] before=new Game[moves.length];
+		for (int i=0;i<moves.length;i++) {
+			before[i]=g.clone();
+			g.push(moves[i][0], moves[i][1]);
+		}
+		assertEquals(Game.X_WON, g.getState());
+		assertEquals('X', g.getCell(2, 2));
+		
+		// popping restores each earlier game exactly
+		for (int i=moves.length-1;i>=0;i--) {
+			g.pop();
+			assertSameGame(before[i], g);
+		}
+		assertSameGame(start, g);
+	}
+	
+	@Test
+	public void testPushPopWholeTree() throws IllegalMoveException {
+		// every move from every reachable game is undone exactly: 549946 games, counting the empty board
+		assertEquals(549946, walk(new Game()));
+	}
+	
+	/**
+	 * Pushes and pops every move below {@code g}, checking {@code g} is restored after each.
+	 * @return the number of games visited
+	 */
+	private static int walk(Game g) throws IllegalMoveException {
+		int visited=1;
+		if (g.isTerminal())
+			return visited;
+		Game copy=g.clone();
+		for (int x=0;x<3;x++)
+			for (int y=0;y<3;y++)
+				if (g.getCell(x, y)==' ') {
+					g.push(x, y);
+					visited+=walk(g);
+					g.pop();
+					assertSameGame(copy, g);
+				}
+		return visited;
+	}
+	
+	@Test
+	public void testRejectedPushLeavesNoUndoEntry() throws IllegalMoveException {
+		Game g=new Game();
+		g.push(1, 1);
+		Game afterFirst=g.clone();
+		
+		int[][] illegal={ {1,1}, {3,0}, {0,5}, {-1,2} };
+		for (int[] m : illegal) {
+			try {
+				g.push(m[0], m[1]);
+				assertTrue("Pushed an illegal move", false);
+			} catch (IllegalMoveException e) {
+				// expected
+			}
+			assertSameGame(afterFirst, g);
+		}
+		
+		// the only move to take back is the first one
+		g.pop();
+		assertSameGame(new Game(), g);
+		try {
+			g.pop();
+			assertTrue("Popped more moves than were pushed", false);
+		} catch (IllegalStateException e) {
+			// expected
+		}
+	}
+	
+	@Test
+	public void testPushAfterGameOver() throws IllegalMoveException {
+		Game g=new Game();
+		int[][] moves={ {0,0}, {1,0}, {0,1}, {1,1}, {0,2} };
+		for (int[] m : moves)
+			g.push(m[0], m[1]);
+		assertEquals(Game.X_WON, g.getState());
+		Game over=g.clone();
+		try {
+			g.push(2, 2);
+			assertTrue("Pushed a move in a finished game", false);
+		} catch (IllegalMoveException e) {
+			// expected
+		}
+		assertSameGame(over, g);
+		g.pop();
+		assertEquals(Game.ONGOING, g.getState());
+	}
+	
+	@Test
+	public void testPoliciesOnlyReadTheGame() throws IllegalMoveException {
+		// X threatens the top row and O the middle one
+		Game g=new Game();
+		int[][] moves={ {0,0}, {1,0}, {0,1}, {1,1} };
+		for (int[] m : moves)
+			g.push(m[0], m[1]);
+		Game before=g.clone();
+		
+		Move win=new AggressivePolicy().getMove(g);
+		assertEquals(0, win.x);
+		assertEquals(2, win.y);
+		assertSameGame(before, g);
+		Move block=new DefensivePolicy().getMove(g);
+		assertEquals(1, block.x);
+		assertEquals(2, block.y);
+		assertSameGame(before, g);
+		
+		// the undo stack is untouched too
+		for (int i=moves.length-1;i>=0;i--)
+			g.pop();
+		assertSameGame(new Game(), g);
+	}
+	
+	@Test
+	public void testBoardAndWinDetection() {
+		// every board, valid or not, with X to move
+		for (int h=1;h<59049;h+=3) {
+			Game g=Game.inverseHash(h);
+			char[][] board=g.getBoard();
+			int empty=0;
+			for (int x=0;x<3;x++)
+				for (int y=0;y<3;y++) {
+					assertEquals(board[x][y], g.getCell(x, y));
+					if (board[x][y]==' ')
+						empty++;
+				}
+			assertEquals(lineCheck(board), g.evaluateGameState());
+			assertEquals(g.getState()==Game.ONGOING?empty:0, g.getPossibleMoves().size());
+		}
+	}
+	
+	/**
+	 * The state of {@code board} by checking its rows, then its columns, then its diagonals for three equal marks.
+	 */
+	private static int lineCheck(char[][] board) {
+		int[][][] lines=new int[8][][];
+		for (int i=0;i<3;i++) {
+			lines[i]=new int[][] { {i,0}, {i,1}, {i,2} };
+			lines[3+i]=new int[][] { {0,i}, {1,i}, {2,i} };
+		}
+		lines[6]=new int[][] { {0,0}, {1,1}, {2,2} };
+		lines[7]=new int[][] { {0,2}, {1,1}, {2,0} };
+		for (int[][] l : lines) {
+			char c=board[l[0][0]][l[0][1]];
+			if (c!=' ' && c==board[l[1][0]][l[1][1]] && c==board[l[2][0]][l[2][1]])
+				return (c=='X')?Game.X_WON:Game.O_WON;
+		}
+		for (char[] row : board)
+			for (char c : row)
+				if (c==' ')
+					return Game.ONGOING;
+		return Game.DRAW;
+	}
+	
+	@Test
+	public void testHashCode() throws IllegalMoveException {
+		// the cached hash agrees with the hash built from the board as a string of base 3 digits, in every game
+		// reachable with either player starting
+		assertEquals(549946, checkHashes(new Game(), 'X'));
+		assertEquals(549946, checkHashes(new Game('O'), 'O'));
+	}
+	
+	/**
+	 * Plays every move below {@code g}, with {@code turn} to move, on copies made with executeMove, and checks the
+	 * hash of each game.
+	 * @return the number of games visited
+	 */
+	private static int checkHashes(Game g, char turn) throws IllegalMoveException {
+		int h=stringHash(g.getBoard(), turn);
+		assertEquals(h, g.hashCode());
+		assertTrue(g.equals(Game.inverseHash(h)));
+		int visited=1;
+		if (g.isTerminal())
+			return visited;
+		for (int x=0;x<3;x++)
+			for (int y=0;y<3;y++)
+				if (g.getCell(x, y)==' ') {
+					Game next=g.clone();
+					next.executeMove(turn, x, y);
+					visited+=checkHashes(next, (turn=='X')?'O':'X');
+				}
+		return visited;
+	}
+	
+	/**
+	 * The game hash as a string of base 3 digits, one per cell (' ' is 0, 'X' 1 and 'O' 2) followed by whose turn
+	 * it is (1 for X, 2 for O).
+	 */
+	private static int stringHash(char[][] board, char turn) {
+		String s="";
+		for (int i=0;i<3;i++)
+			for (int j=0;j<3;j++)
+				s+=(board[i][j]=='X')?"1":(board[i][j]=='O')?"2":"0";
+		s+=(turn=='X')?"1":"2";
+		return Integer.parseInt(s, 3);
+	}
+	
+	/**
+	 * Checks that the two games have the same board, turn and state.
+	 */
+	static void assertSameGame(Game expected, Game actual) {
+		assertEquals(expected.hashCode(), actual.hashCode());
+		assertEquals(expected.getState(), actual.getState());
+		for (int x=0;x<3;x++)
+			for (int y=0;y<3;y++)
+				assertEquals(expected.getCell(x, y), actual.getCell(x, y));
+	}
+
+}
@@ -0,0 +1,44 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import ticTacToe.DefensiveAgent;
+import ticTacToe.Game;
+import ticTacToe.MCTSAgent;
+import ticTacToe.MCTSPolicy;
+import ticTacToe.RandomAgent;
+
+public class TestMCTSAgent {
+	@Test
+	public void testDefensive() {
+		System.out.println("Against Defensive Agent:");
+		int[] results=TestPolicyIterationAgent.playAgainstEachOther(new MCTSAgent(), new DefensiveAgent(), 50);
+		System.out.println("Wins: " + results[0] + " Losses: " + results[1] + " Draws: " + results[2]);
+		assertEquals(0, results[1]);
+		
+
+	}
+	
+	@Test
+	public void testRandom() {
+		System.out.println("Against Random Agent, on 2 threads:");
+		int[] results=TestPolicyIterationAgent.playAgainstEachOther(new MCTSAgent(2, 20000, 0), new RandomAgent(), 50);
+		
+		System.out.println("Wins: " + results[0] + " Losses: " + results[1] + " Draws: " + results[2]);
+		assertEquals(0, results[1]);
+		
+
+	}
+	
+	@Test
+	public void testCounters() {
+		MCTSAgent agent=new MCTSAgent(3, 3000, 0);
+		MCTSPolicy policy=(MCTSPolicy) agent.getPolicy();
+		assertTrue(policy.getMove(new Game())!=null);
+		assertEquals(3000L, policy.getLastRollouts());
+		assertTrue(policy.getRolloutsPerSecond() > 0);
+		System.out.println("Rollouts per second: " + (long) policy.getRolloutsPerSecond());
+	}
+
+}
@@ -111,5 +111,42 @@ public class TestPolicyIterationAgent {
 		
 
 	}
+	
+	@Test
+	public void testParallelImprovement() {
+		System.out.println("Parallel policy improvement against Random Agent:");
+		PolicyIterationAgent parallel=new PolicyIterationAgent(0.9, PolicyIterationAgent.Evaluation.TOPOLOGICAL, true);
+		assertEquals(0, parallel.getRounds().get(parallel.getRounds().size()-1).policyChanges);
+		
+		int[] results=playAgainstEachOther(parallel, new RandomAgent(), 50);
+		
+		System.out.println("Wins: " + results[0] + " Losses: " + results[1] + " Draws: " + results[2]);
+		assertEquals(0, results[1]);
+	}
+	
+	@Test
+	public void testModifiedPolicyIteration() {
+		System.out.println("Modified policy iteration against Random Agent:");
+		PolicyIterationAgent agent=new PolicyIterationAgent(0.9, 2, true);
+		assertTrue(agent.getRounds().size() > 0);
+		assertEquals(0, agent.getRounds().get(agent.getRounds().size()-1).policyChanges);
+		int[] results=playAgainstEachOther(agent, new RandomAgent(), 50);
+		
+		System.out.println("Wins: " + results[0] + " Losses: " + results[1] + " Draws: " + results[2]);
+		assertEquals(0, results[1]);
+		
+
+	}
+	
+	@Test
+	public void testTopologicalEvaluation() {
+		System.out.println("Topological evaluation against Random Agent:");
+		int[] results=playAgainstEachOther(new PolicyIterationAgent(0.9, PolicyIterationAgent.Evaluation.TOPOLOGICAL), new RandomAgent(), 50);
+		
+		System.out.println("Wins: " + results[0] + " Losses: " + results[1] + " Draws: " + results[2]);
+		assertEquals(0, results[1]);
+		
+
+	}
 
 }
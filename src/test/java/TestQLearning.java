@@ -1,11 +1,20 @@
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
 
 import org.junit.Test;
 
 import ticTacToe.AggressiveAgent;
 import ticTacToe.DefensiveAgent;
+import ticTacToe.Game;
+import ticTacToe.IllegalMoveException;
+import ticTacToe.Move;
+import ticTacToe.Policy;
 import ticTacToe.QLearningAgent;
 import ticTacToe.RandomAgent;
+import ticTacToe.ReplayBuffer;
 import ticTacToe.ValueIterationAgent;
 
 public class TestQLearning {
@@ -42,4 +51,91 @@ public class TestQLearning {
 
 	}
 
+	@Test
+	public void testParallelTraining() throws IllegalMoveException {
+		System.out.println("Trained on 4 threads, against Random Agent:");
+		QLearningAgent agent=new QLearningAgent(new RandomAgent(), 0.1, 70000, 0.9, 4);
+		assertEquals(70000, agent.getEpisodesRun());
+		assertEquals(QLearningAgent.StopReason.EPISODE_LIMIT, agent.getStopReason());
+		assertTrained(agent);
+	}
+
+	@Test
+	public void testExperienceReplay() throws IllegalMoveException {
+		System.out.println("With prioritized experience replay, against Random Agent:");
+		ReplayBuffer buffer=new ReplayBuffer(20000, ReplayBuffer.Sampling.PRIORITIZED, 0.6);
+		// a seventh of the episodes of the default agent, with each move replayed 8 times. Every episode has at
+		// least 3 moves, so the buffer is full
+		QLearningAgent agent=new QLearningAgent(new RandomAgent(), 0.1, 10000, 0.9, buffer, 8);
+		assertEquals(10000, agent.getEpisodesRun());
+		assertEquals(20000, buffer.size());
+		for (int slot=0;slot<buffer.size();slot++) {
+			assertTrue(buffer.getState(slot)>=0);
+			assertTrue(buffer.getNextState(slot)>=-1);
+		}
+		assertTrained(agent);
+	}
+
+	@Test
+	public void testEarlyStopping() throws IllegalMoveException {
+		QLearningAgent fixed=new QLearningAgent(new RandomAgent(), 0.1, 500, 0.9);
+		assertEquals(500, fixed.getEpisodesRun());
+		assertEquals(QLearningAgent.StopReason.EPISODE_LIMIT, fixed.getStopReason());
+
+		// any number of changes counts as stable, so training stops after exactly 3 checks...
+		QLearningAgent always=new QLearningAgent(new RandomAgent(), 0.1, 70000, 0.9, 1000, 3, Integer.MAX_VALUE);
+		assertEquals(3000, always.getEpisodesRun());
+		assertEquals(QLearningAgent.StopReason.CONVERGED, always.getStopReason());
+
+		// ...and no number does, so it runs to the limit
+		QLearningAgent never=new QLearningAgent(new RandomAgent(), 0.1, 5000, 0.9, 1000, 3, -1);
+		assertEquals(5000, never.getEpisodesRun());
+		assertEquals(QLearningAgent.StopReason.EPISODE_LIMIT, never.getStopReason());
+
+		System.out.println("Stopped at convergence, against Random Agent:");
+		QLearningAgent agent=new QLearningAgent(new RandomAgent(), 0.1, 70000, 0.9, 1000, 3, 10);
+		System.out.println("Episodes: " + agent.getEpisodesRun() + " (" + agent.getStopReason() + ")");
+		assertTrue(agent.getEpisodesRun()<=70000);
+		if (agent.getStopReason()==QLearningAgent.StopReason.CONVERGED)
+			assertEquals(0, agent.getEpisodesRun()%1000);
+		assertTrained(agent);
+	}
+
+	/**
+	 * Checks that {@code agent} has a legal move in every game where X is to play, and that it loses to a random
+	 * opponent with probability at most 0.05. An untrained agent loses about 1 game in 5; trained ones lose less than
+	 * 1 in 50. The probability is computed exactly over all the opponent's replies rather than by playing games, so
+	 * the only randomness left is in the training.
+	 */
+	static void assertTrained(QLearningAgent agent) throws IllegalMoveException {
+		Policy policy=agent.getPolicy();
+		for (Game g : Game.generateAllValidGames('X'))
+			if (!g.isTerminal()) {
+				Move m=policy.getMove(g);
+				assertNotNull(m);
+				assertEquals(' ', g.getCell(m.x, m.y));
+			}
+
+		double loss=lossProbability(policy, new Game());
+		System.out.println("Probability of losing: " + loss);
+		assertTrue(loss<=0.05);
+	}
+
+	/**
+	 * @return the probability that X, playing {@code policy}, loses {@code g} to an opponent that plays uniformly at
+	 * random
+	 */
+	private static double lossProbability(Policy policy, Game g) throws IllegalMoveException {
+		if (g.isTerminal())
+			return (g.getState()==Game.O_WON)?1.0:0.0;
+		if (g.hashCode()%3==1)
+			return lossProbability(policy, g.simulateMove(policy.getMove(g)));
+
+		List<Move> replies=g.getPossibleMoves();
+		double loss=0.0;
+		for (Move m : replies)
+			loss+=lossProbability(policy, g.simulateMove(m));
+		return loss/replies.size();
+	}
+
 }
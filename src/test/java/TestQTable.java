@@ -0,0 +1,86 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import ticTacToe.Game;
+import ticTacToe.IllegalMoveException;
+import ticTacToe.Move;
+import ticTacToe.QTable;
+import ticTacToe.StateIndex;
+import ticTacToe.Symmetry;
+
+public class TestQTable {
+	@Test
+	public void testSize() {
+		// 9 q-values per canonical game
+		StateIndex index=StateIndex.get();
+		int canonical=0;
+		for (int i=0;i<index.size();i++)
+			if (index.gameAt(i).isCanonical())
+				canonical++;
+		assertEquals(9*canonical, new QTable().size());
+		assertEquals(15300, new QTable().size());
+	}
+	
+	@Test
+	public void testSlots() {
+		// gives every q-state a value named after its canonical q-state (the canonical game, and the lowest cell the
+		// move can be mapped to in it): symmetric q-states share a slot, and no two other q-states do
+		StateIndex index=StateIndex.get();
+		QTable table=new QTable();
+		for (int pass=0;pass<2;pass++)
+			for (int i=0;i<index.size();i++) {
+				Game g=index.gameAt(i);
+				int t=g.canonicalTransform();
+				Game canonical=g.canonical();
+				for (Move m : g.getPossibleMoves()) {
+					int played=3*m.x+m.y;
+					int k=Symmetry.transformCell(played, t);
+					int cell=k;
+					for (int s=0;s<Symmetry.COUNT;s++)
+						if (canonical.transform(s).hashCode()==canonical.hashCode())
+							cell=Math.min(cell, Symmetry.transformCell(k, s));
+					double key=canonical.hashCode()*9+cell;
+					if (pass==0)
+						table.setQValue(i, played, key);
+					else
+						assertEquals(key, table.getQValue(i, played), 0.0);
+				}
+			}
+	}
+	
+	@Test
+	public void testGameAndMove() throws IllegalMoveException {
+		QTable table=new QTable();
+		Game g=new Game();
+		g.executeMove('X', 0, 1);
+		g.executeMove('O', 1, 1);
+		Move m=new Move('X', 0, 0);
+		assertEquals(0.0, table.getQValue(g, m), 0.0);
+		
+		table.addQValue(g, m, 5.0);
+		assertEquals(5.0, table.getQValue(g, m), 0.0);
+		assertEquals(5.0, table.getQValue(table.stateOf(g), 0), 0.0);
+		
+		// the same q-value in every symmetric game, with the move transformed along
+		for (int t=0;t<Symmetry.COUNT;t++)
+			assertEquals(5.0, table.getQValue(g.transform(t), Symmetry.transform(m, t)), 0.0);
+		
+		// and for the symmetric move in the same game, which is its own mirror image
+		assertEquals(5.0, table.getQValue(g, new Move('X', 0, 2)), 0.0);
+		assertEquals(0.0, table.getQValue(g, new Move('X', 2, 0)), 0.0);
+		
+		// occupied cells, null moves and invalid games have no q-value, and adding one does nothing
+		Move occupied=new Move('X', 1, 1);
+		table.addQValue(g, occupied, 1.0);
+		assertTrue(table.getQValue(g, occupied)==null);
+		assertTrue(table.getQValue(g, null)==null);
+		Game invalid=Game.inverseHash(3*(3*3+1)+1);//two Xs, X to move
+		assertEquals(-1, table.stateOf(invalid));
+		table.addQValue(invalid, m, 1.0);
+		assertTrue(table.getQValue(invalid, m)==null);
+		assertEquals(5.0, table.getQValue(g, m), 0.0);
+	}
+
+}
@@ -0,0 +1,118 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import ticTacToe.ReplayBuffer;
+
+public class TestReplayBuffer {
+	@Test
+	public void testWraparound() {
+		ReplayBuffer buffer=new ReplayBuffer(3);
+		for (int i=0;i<5;i++) {
+			int slot=buffer.add(100+i, i, -i, (i==4)?-1:101+i);
+			assertEquals(i%3, slot);
+		}
+		assertEquals(3, buffer.size());
+		assertEquals(3, buffer.capacity());
+		
+		// transitions 0 and 1 were overwritten by 3 and 4
+		int[] expected={ 3, 4, 2 };
+		for (int slot=0;slot<3;slot++) {
+			int i=expected[slot];
+			assertEquals(100+i, buffer.getState(slot));
+			assertEquals(i, buffer.getCell(slot));
+			assertEquals(-i, buffer.getReward(slot), 0.0);
+			assertEquals((i==4)?-1:101+i, buffer.getNextState(slot));
+		}
+	}
+	
+	@Test
+	public void testUniformSampling() {
+		ReplayBuffer buffer=new ReplayBuffer(10);
+		for (int i=0;i<4;i++)
+			buffer.add(i, 0, 0.0, -1);
+		
+		// only filled slots are drawn, all about as often
+		int[] slots=new int[40000];
+		buffer.sample(slots.length, new Random(1), slots);
+		int[] counts=new int[10];
+		for (int s : slots)
+			counts[s]++;
+		for (int s=0;s<4;s++)
+			assertEquals(10000, counts[s], 500);
+		for (int s=4;s<10;s++)
+			assertEquals(0, counts[s]);
+	}
+	
+	@Test
+	public void testPrioritizedSampling() {
+		ReplayBuffer buffer=new ReplayBuffer(5, ReplayBuffer.Sampling.PRIORITIZED, 1.0);
+		for (int i=0;i<4;i++)
+			buffer.add(i, 0, 0.0, -1);
+		
+		// with exponent 1 the priorities are the errors (plus a tiny minimum): 1:2:3:4
+		for (int s=0;s<4;s++)
+			buffer.updatePriority(s, s+1);
+		for (int s=0;s<4;s++)
+			assertEquals((s+1)/10.0, buffer.probability(s), 1e-3);
+		
+		int[] slots=new int[100000];
+		buffer.sample(slots.length, new Random(1), slots);
+		int[] counts=new int[5];
+		for (int s : slots)
+			counts[s]++;
+		for (int s=0;s<4;s++)
+			assertEquals((s+1)*10000, counts[s], 1000);
+		assertEquals(0, counts[4]);
+		
+		// updating a priority moves the samples: slot 3 is hardly drawn any more
+		buffer.updatePriority(3, 0.0);
+		assertTrue(buffer.probability(3) < 1e-3);
+		buffer.sample(slots.length, new Random(2), slots);
+		counts=new int[5];
+		for (int s : slots)
+			counts[s]++;
+		assertTrue(counts[3] < 100);
+		
+		// a new transition gets the highest priority so far
+		int slot=buffer.add(4, 0, 0.0, -1);
+		assertEquals(4.0/(1+2+3+4), buffer.probability(slot), 1e-3);
+	}
+	
+	@Test
+	public void testPrioritiesDoNotDrift() {
+		ReplayBuffer buffer=new ReplayBuffer(4, ReplayBuffer.Sampling.PRIORITIZED, 1.0);
+		for (int i=0;i<4;i++)
+			buffer.add(i, 0, 0.0, -1);
+		
+		// a huge priority swamps the others in the total; once it is gone the total must be exact again
+		for (int round=0;round<1000;round++) {
+			buffer.updatePriority(round%4, 1e17);
+			buffer.updatePriority(round%4, 0.0);
+		}
+		for (int s=0;s<4;s++)
+			assertEquals(0.25, buffer.probability(s), 1e-12);
+	}
+	
+	@Test
+	public void testCapacityLimits() {
+		int[][] capacities={ {0, 0}, {Integer.MAX_VALUE/16+1, 0}, {(1<<26)+1, 1} };
+		for (int[] c : capacities) {
+			try {
+				new ReplayBuffer(c[0], (c[1]==1)?ReplayBuffer.Sampling.PRIORITIZED:ReplayBuffer.Sampling.UNIFORM, 0.6);
+				assertTrue("Created a buffer of "+c[0]+" transitions", false);
+			} catch (IllegalArgumentException e) {
+				// expected
+			}
+		}
+	}
+	
+	@Test(expected=IllegalStateException.class)
+	public void testSampleEmpty() {
+		new ReplayBuffer(4).sample(1, new Random(), new int[1]);
+	}
+
+}
@@ -0,0 +1,43 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import ticTacToe.DefensiveAgent;
+import ticTacToe.Game;
+import ticTacToe.IllegalMoveException;
+import ticTacToe.RandomAgent;
+import ticTacToe.SearchAgent;
+import ticTacToe.SearchPolicy;
+
+public class TestSearchAgent {
+	@Test
+	public void testDefensive() {
+		System.out.println("Against Defensive Agent:");
+		int[] results=TestPolicyIterationAgent.playAgainstEachOther(new SearchAgent(), new DefensiveAgent(), 50);
+		System.out.println("Wins: " + results[0] + " Losses: " + results[1] + " Draws: " + results[2]);
+		assertEquals(0, results[1]);
+		
+
+	}
+	
+	@Test
+	public void testRandom() {
+		System.out.println("Against Random Agent, with a small table:");
+		int[] results=TestPolicyIterationAgent.playAgainstEachOther(new SearchAgent(16, SearchPolicy.Replacement.ALWAYS), new RandomAgent(), 50);
+		
+		System.out.println("Wins: " + results[0] + " Losses: " + results[1] + " Draws: " + results[2]);
+		assertEquals(0, results[1]);
+		
+
+	}
+	
+	@Test
+	public void testAgainstItself() throws IllegalMoveException {
+		// perfect play from both sides is always a draw
+		Game g=new Game(new SearchAgent(), new SearchAgent());
+		g.playOut();
+		assertTrue(g.getState()==Game.DRAW);
+	}
+
+}
@@ -0,0 +1,67 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import ticTacToe.Game;
+import ticTacToe.StateIndex;
+
+public class TestStateIndex {
+	@Test
+	public void testDenseIndex() {
+		StateIndex index=StateIndex.get();
+		assertEquals(12092, index.size());
+		
+		// every hash of a valid game has an index, every other hash has none
+		int valid=0;
+		for (int h=0;h<59049;h++) {
+			Game g=(h%3==0)?null:Game.inverseHash(h);
+			if (g!=null && g.isValid()) {
+				valid++;
+				assertEquals(h, index.hashOf(index.indexOf(h)));
+			}
+			else
+				assertEquals(-1, index.indexOf(h));
+		}
+		assertEquals(index.size(), valid);
+		assertEquals(-1, index.indexOf(-1));
+		assertEquals(-1, index.indexOf(59049));
+	}
+	
+	@Test
+	public void testRoundTrip() {
+		StateIndex index=StateIndex.get();
+		for (int i=0;i<index.size();i++) {
+			int h=index.hashOf(i);
+			if (i>0)
+				assertTrue(h>index.hashOf(i-1));
+			assertEquals(i, index.indexOf(h));
+			
+			Game g=index.gameAt(i);
+			assertEquals(h, g.hashCode());
+			assertEquals(i, index.indexOf(g));
+			assertEquals((h%3==1)?'X':'O', index.whoseTurn(i));
+			for (int k=0;k<9;k++) {
+				char c=g.getCell(k/3, k%3);
+				assertEquals(c=='X', (index.xBoard(i)&(1<<k))!=0);
+				assertEquals(c=='O', (index.oBoard(i)&(1<<k))!=0);
+			}
+			
+			// the stored state is the one the game evaluates to
+			assertEquals(Game.inverseHash(h).evaluateGameState(), index.status(i));
+			assertEquals(index.status(i), g.getState());
+		}
+	}
+	
+	@Test
+	public void testValidGamesAreIndexed() {
+		StateIndex index=StateIndex.get();
+		for (char xo : new char[] { 'X', 'O' })
+			for (Game g : Game.generateAllValidGames(xo)) {
+				int i=index.indexOf(g);
+				assertTrue(i>=0);
+				assertEquals(g.hashCode(), index.hashOf(i));
+			}
+	}
+
+}
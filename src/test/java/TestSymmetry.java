@@ -0,0 +1,98 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.Test;
+
+import ticTacToe.Game;
+import ticTacToe.IllegalMoveException;
+import ticTacToe.Move;
+import ticTacToe.StateIndex;
+import ticTacToe.Symmetry;
+
+public class TestSymmetry {
+	/**
+	 * The rows, columns and diagonals as cell masks
+	 */
+	private static final int[] LINES={0x007, 0x038, 0x1C0, 0x049, 0x092, 0x124, 0x111, 0x054};
+	
+	@Test
+	public void testSymmetries() {
+		Set<Integer> maps=new HashSet<Integer>();
+		for (int t=0;t<Symmetry.COUNT;t++) {
+			int map=0;
+			int cells=0;
+			for (int k=0;k<9;k++) {
+				int to=Symmetry.transformCell(k, t);
+				cells|=1<<to;
+				map=map*9+to;
+				assertEquals(k, Symmetry.transformCell(to, Symmetry.inverse(t)));
+				assertEquals(1<<to, Symmetry.transformBoard(1<<k, t));
+			}
+			// a permutation of the cells, different from every other symmetry
+			assertEquals(0x1FF, cells);
+			assertTrue(maps.add(map));
+			
+			// lines are moved onto lines
+			for (int line : LINES) {
+				boolean found=false;
+				for (int other : LINES)
+					found|=(Symmetry.transformBoard(line, t)==other);
+				assertTrue(found);
+			}
+		}
+		for (int k=0;k<9;k++)
+			assertEquals(k, Symmetry.transformCell(k, 0));
+	}
+	
+	@Test
+	public void testCanonical() {
+		StateIndex index=StateIndex.get();
+		Set<Integer> classes=new HashSet<Integer>();
+		int canonical=0;
+		for (int i=0;i<index.size();i++) {
+			Game g=index.gameAt(i);
+			Game c=g.canonical();
+			assertTrue(c.isCanonical());
+			assertEquals(g.getState(), c.getState());
+			if (g.isCanonical()) {
+				canonical++;
+				assertEquals(g.hashCode(), c.hashCode());
+			}
+			
+			// every symmetric variant has the same canonical form, which has the lowest hash of them all
+			int lowest=g.hashCode();
+			for (int t=0;t<Symmetry.COUNT;t++) {
+				Game variant=g.transform(t);
+				assertEquals(g.hashCode()%3, variant.hashCode()%3);
+				assertEquals(g.getState(), variant.getState());
+				assertEquals(c.hashCode(), variant.canonical().hashCode());
+				assertEquals(g.hashCode(), variant.transform(Symmetry.inverse(t)).hashCode());
+				lowest=Math.min(lowest, variant.hashCode());
+			}
+			assertEquals(lowest, c.hashCode());
+			classes.add(lowest);
+		}
+		// one canonical game per class of symmetric games
+		assertEquals(classes.size(), canonical);
+	}
+	
+	@Test
+	public void testTransformMove() throws IllegalMoveException {
+		StateIndex index=StateIndex.get();
+		for (int i=0;i<index.size();i++) {
+			Game g=index.gameAt(i);
+			for (Move m : g.getPossibleMoves())
+				for (int t=0;t<Symmetry.COUNT;t++) {
+					// playing a move then transforming the game is the same as transforming both, then playing
+					Game played=g.simulateMove(m).transform(t);
+					Game transformed=g.transform(t).simulateMove(Symmetry.transform(m, t));
+					assertEquals(played.hashCode(), transformed.hashCode());
+					assertEquals(played.getState(), transformed.getState());
+				}
+		}
+	}
+
+}
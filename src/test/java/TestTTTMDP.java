@@ -0,0 +1,188 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import ticTacToe.CompiledMDP;
+import ticTacToe.Game;
+import ticTacToe.IllegalMoveException;
+import ticTacToe.Move;
+import ticTacToe.OpponentModel;
+import ticTacToe.StateIndex;
+import ticTacToe.TTTMDP;
+import ticTacToe.TransitionProb;
+
+public class TestTTTMDP {
+	@Test
+	public void testCacheHitsAndMisses() {
+		TTTMDP mdp=new TTTMDP();
+		mdp.enableCache(10, TTTMDP.EvictionPolicy.LRU);
+		List<TransitionProb> first=mdp.generateTransitions(new Game(), new Move('X', 0, 0));
+		assertEquals(0L, mdp.getCacheHits());
+		assertEquals(1L, mdp.getCacheMisses());
+		
+		// an equal game and move: the same list
+		List<TransitionProb> second=mdp.generateTransitions(new Game(), new Move('X', 0, 0));
+		assertTrue(first==second);
+		assertEquals(1L, mdp.getCacheHits());
+		
+		mdp.generateTransitions(new Game(), new Move('X', 1, 1));
+		assertEquals(1L, mdp.getCacheHits());
+		assertEquals(2L, mdp.getCacheMisses());
+		
+		// same transitions as without the cache
+		assertEquals(new TTTMDP().generateTransitions(new Game(), new Move('X', 0, 0)).size(), first.size());
+	}
+	
+	@Test
+	public void testCacheEviction() {
+		Move a=new Move('X', 0, 0);
+		Move b=new Move('X', 0, 1);
+		Move c=new Move('X', 0, 2);
+		
+		// LRU: using a keeps it, so b is dropped
+		TTTMDP lru=new TTTMDP();
+		lru.enableCache(2, TTTMDP.EvictionPolicy.LRU);
+		lru.generateTransitions(new Game(), a);
+		lru.generateTransitions(new Game(), b);
+		lru.generateTransitions(new Game(), a);
+		lru.generateTransitions(new Game(), c);
+		assertEquals(1L, lru.getCacheHits());
+		lru.generateTransitions(new Game(), a);
+		assertEquals(2L, lru.getCacheHits());
+		lru.generateTransitions(new Game(), b);
+		assertEquals(2L, lru.getCacheHits());
+		assertEquals(4L, lru.getCacheMisses());
+		
+		// FIFO: a is the oldest, so it is dropped even though it was used
+		TTTMDP fifo=new TTTMDP();
+		fifo.enableCache(2, TTTMDP.EvictionPolicy.FIFO);
+		fifo.generateTransitions(new Game(), a);
+		fifo.generateTransitions(new Game(), b);
+		fifo.generateTransitions(new Game(), a);
+		fifo.generateTransitions(new Game(), c);
+		assertEquals(1L, fifo.getCacheHits());
+		fifo.generateTransitions(new Game(), b);
+		assertEquals(2L, fifo.getCacheHits());
+		fifo.generateTransitions(new Game(), a);
+		assertEquals(2L, fifo.getCacheHits());
+		assertEquals(4L, fifo.getCacheMisses());
+	}
+	
+	@Test
+	public void testCacheCountsFromThreads() throws InterruptedException {
+		final TTTMDP mdp=new TTTMDP();
+		mdp.enableCache(100, TTTMDP.EvictionPolicy.LRU);
+		Thread[] threads=new Thread[4];
+		for (int i=0;i<threads.length;i++) {
+			threads[i]=new Thread(() -> {
+				for (int n=0;n<1000;n++)
+					mdp.generateTransitions(new Game(), new Move('X', n%3, 0));
+			});
+			threads[i].start();
+		}
+		for (Thread t : threads)
+			t.join();
+		
+		// every call is counted once, as a hit or a miss; each of the 3 moves misses at least once
+		assertEquals(4000L, mdp.getCacheHits()+mdp.getCacheMisses());
+		assertTrue(mdp.getCacheMisses()>=3);
+	}
+	
+	@Test
+	public void testCompiledModel() {
+		// symmetric states against a random opponent, all states against an aggressive one
+		checkCompiled(new TTTMDP());
+		checkCompiled(new TTTMDP(OpponentModel.aggressive()));
+	}
+	
+	/**
+	 * Checks the compiled form of {@code mdp} state by state and action by action against
+	 * {@link TTTMDP#generateTransitions}.
+	 */
+	private static void checkCompiled(TTTMDP mdp) {
+		CompiledMDP model=mdp.compile();
+		int n=model.numStates();
+		double[] zeros=new double[n];
+		double[] ones=new double[n];
+		double[] v=new double[n];
+		Random random=new Random(1);
+		for (int s=0;s<n;s++) {
+			ones[s]=1.0;
+			v[s]=random.nextDouble();
+		}
+		
+		// the actions of the states come one after the other, in the order of the legal moves
+		int a=0;
+		for (int s=0;s<n;s++) {
+			Game g=model.gameAt(s);
+			assertEquals(s, model.stateOf(g));
+			assertEquals(g.isTerminal(), model.isTerminal(s));
+			assertTrue(g.isTerminal() || g.hashCode()%3==1);
+			if (model.isTerminal(s)) {
+				assertEquals(v[s], model.backup(s, v, 0.9), 0.0);
+				continue;
+			}
+			
+			double best=Double.NEGATIVE_INFINITY;
+			for (Move m : g.getPossibleMoves()) {
+				Move compiled=model.moveOf(a);
+				assertEquals(m.x, compiled.x);
+				assertEquals(m.y, compiled.y);
+				
+				double expected=0.0;
+				for (TransitionProb t : mdp.generateTransitions(g, m))
+					expected+=t.prob*(t.outcome.localReward+0.9*v[model.stateOf(t.outcome.sPrime)]);
+				
+				// the probabilities of an action add up to 1
+				assertEquals(1.0, model.qValue(a, ones, 1.0)-model.qValue(a, zeros, 1.0), 1e-9);
+				assertEquals(expected, model.qValue(a, v, 0.9), 1e-9);
+				best=Math.max(best, expected);
+				a++;
+			}
+			assertEquals(best, model.backup(s, v, 0.9), 1e-9);
+		}
+		assertEquals(model.numActions(), a);
+		assertTrue(model.numTransitions()<=8*model.numActions());
+	}
+	
+	@Test
+	public void testCompiledStates() {
+		StateIndex index=StateIndex.get();
+		int canonical=0;
+		int all=0;
+		for (int i=0;i<index.size();i++) {
+			if (index.whoseTurn(i)!='X' && index.status(i)==Game.ONGOING)
+				continue;
+			all++;
+			if (index.gameAt(i).isCanonical())
+				canonical++;
+		}
+		assertEquals(canonical, new TTTMDP().compile().numStates());
+		assertEquals(all, new TTTMDP(OpponentModel.aggressive()).compile().numStates());
+	}
+	
+	@Test
+	public void testCacheDoesNotAliasCallerGame() throws IllegalMoveException {
+		TTTMDP mdp=new TTTMDP();
+		mdp.enableCache(10, TTTMDP.EvictionPolicy.LRU);
+		Game g=new Game();
+		mdp.generateTransitions(g, new Move('X', 0, 0));
+		
+		// the caller goes on playing in its game...
+		g.executeMove('X', 1, 1);
+		
+		// ...which must not show up in the cached outcomes
+		List<TransitionProb> cached=mdp.generateTransitions(new Game(), new Move('X', 0, 0));
+		assertEquals(1L, mdp.getCacheHits());
+		for (TransitionProb t : cached) {
+			assertEquals(new Game(), t.outcome.s);
+			assertEquals(0, t.outcome.move.x);
+			assertEquals(0, t.outcome.move.y);
+		}
+	}
+
+}
@@ -1,10 +1,24 @@
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
 
 import org.junit.Test;
 
 import ticTacToe.AggressiveAgent;
+import ticTacToe.AggressivePolicy;
+import ticTacToe.BatchSolver;
+import ticTacToe.CompiledMDP;
 import ticTacToe.DefensiveAgent;
+import ticTacToe.DefensivePolicy;
+import ticTacToe.Game;
+import ticTacToe.IllegalMoveException;
+import ticTacToe.OpponentModel;
+import ticTacToe.PolicyIterationAgent;
 import ticTacToe.RandomAgent;
+import ticTacToe.TTTMDP;
+import ticTacToe.TwoSidedSolver;
 import ticTacToe.ValueIterationAgent;
 
 public class TestValueIteration {
@@ -40,5 +54,201 @@ public class TestValueIteration {
 		
 
 	}
+	
+	@Test
+	public void testRetrogradeMatchesJacobi() {
+		ValueIterationAgent jacobi=new ValueIterationAgent(0.9, ValueIterationAgent.Mode.JACOBI);
+		ValueIterationAgent retrograde=new ValueIterationAgent(0.9, ValueIterationAgent.Mode.RETROGRADE);
+		assertEquals(1, retrograde.getSweeps());
+		
+		for (Game g : Game.generateAllValidGames('X')) {
+			assertEquals(jacobi.getValue(g), retrograde.getValue(g), 1e-9);
+			if (!g.isTerminal())
+				assertEquals(jacobi.getPolicy().getMove(g), retrograde.getPolicy().getMove(g));
+		}
+
+	}
+	
+	@Test
+	public void testResiduals() {
+		CompiledMDP model=new TTTMDP().compile();
+		int ongoing=0;
+		for (int s=0;s<model.numStates();s++)
+			if (!model.isTerminal(s))
+				ongoing++;
+		
+		ValueIterationAgent jacobi=new ValueIterationAgent(0.9, ValueIterationAgent.Mode.JACOBI);
+		double[] residuals=jacobi.getResiduals();
+		int sweeps=jacobi.getSweeps();
+		assertTrue(sweeps>=1 && sweeps<100);
+		assertEquals(sweeps, residuals.length);
+		assertEquals((long)sweeps*ongoing, jacobi.getBackups());
+		
+		// iteration stops at the first sweep whose residual is below epsilon, and the residuals shrink at least
+		// as fast as the discount
+		assertTrue(residuals[sweeps-1]<1e-9);
+		for (int i=0;i<sweeps-1;i++) {
+			assertTrue(residuals[i]>=1e-9);
+			assertTrue(residuals[i+1]<=0.9*residuals[i]+1e-12);
+		}
+		
+		// the parallel sweeps do the same backups
+		ValueIterationAgent parallel=new ValueIterationAgent(0.9, ValueIterationAgent.Mode.PARALLEL);
+		assertEquals(sweeps, parallel.getSweeps());
+		for (int i=0;i<sweeps;i++)
+			assertEquals(residuals[i], parallel.getResiduals()[i], 0.0);
+		
+		// in place sweeps converge in fewer sweeps
+		ValueIterationAgent gaussSeidel=new ValueIterationAgent(0.9, ValueIterationAgent.Mode.GAUSS_SEIDEL);
+		assertTrue(gaussSeidel.getSweeps()<=sweeps);
+		assertTrue(gaussSeidel.getResiduals()[gaussSeidel.getSweeps()-1]<1e-9);
+		
+		// the values have converged, so another run stops after one sweep
+		jacobi.iterate();
+		assertEquals(1, jacobi.getSweeps());
+		assertTrue(jacobi.getResiduals()[0]<1e-9);
+	}
+	
+	@Test
+	public void testModes() {
+		for (ValueIterationAgent.Mode mode : ValueIterationAgent.Mode.values()) {
+			System.out.println(mode + " against Random Agent:");
+			int[] results=TestPolicyIterationAgent.playAgainstEachOther(new ValueIterationAgent(0.9, mode), new RandomAgent(), 50);
+			
+			System.out.println("Wins: " + results[0] + " Losses: " + results[1] + " Draws: " + results[2]);
+			assertEquals(0, results[1]);
+		}
+
+	}
+
+	@Test
+	public void testBatchSolver() {
+		List<BatchSolver.Config> configs=new ArrayList<BatchSolver.Config>();
+		configs.add(new BatchSolver.Config(10, -50, -1, 0, 0.9));
+		configs.add(new BatchSolver.Config(5, -20, -0.5, 2, 0.7));
+		List<BatchSolver.Result> results=new BatchSolver().solve(configs);
+		assertEquals(2, results.size());
+		
+		// the default configuration gives the same solution as a single retrograde solve
+		ValueIterationAgent agent=new ValueIterationAgent(0.9, ValueIterationAgent.Mode.RETROGRADE);
+		for (Game g : Game.generateAllValidGames('X')) {
+			assertEquals(agent.getValue(g), results.get(0).getValue(g), 1e-9);
+			if (!g.isTerminal())
+				assertEquals(agent.getPolicy().getMove(g), results.get(0).getPolicy().getMove(g));
+		}
+		
+		// with the same statistics
+		assertEquals(agent.getSweeps(), results.get(0).getSweeps());
+		assertEquals(agent.getResiduals()[0], results.get(0).getResiduals()[0], 1e-9);
+		assertEquals(agent.getBackups(), results.get(0).getBackups());
+		assertEquals(results.get(0).getBackups(), results.get(1).getBackups());
+		assertTrue(results.get(1).getResiduals()[0] != results.get(0).getResiduals()[0]);
+		
+		int[] outcomes=TestPolicyIterationAgent.playAgainstEachOther(new ValueIterationAgent(results.get(1).getPolicy()), new RandomAgent(), 50);
+		assertEquals(0, outcomes[1]);
+	}
+
+	@Test
+	public void testReplan() {
+		ValueIterationAgent cold=new ValueIterationAgent(0.9, 10, -60, -1, 0);
+		cold.initValues();
+		cold.train();
+		
+		ValueIterationAgent warm=new ValueIterationAgent(0.9);
+		warm.replan(new TTTMDP(10, -60, -1, 0), 0.9);
+		assertTrue(warm.getBackups() < cold.getBackups());
+		
+		for (Game g : Game.generateAllValidGames('X')) {
+			assertEquals(cold.getValue(g), warm.getValue(g), 1e-9);
+			if (!g.isTerminal())
+				assertEquals(cold.getPolicy().getMove(g), warm.getPolicy().getMove(g));
+		}
+	}
+
+	@Test
+	public void testReplanOtherOpponent() {
+		// the model of another opponent has other states: replanning starts over
+		ValueIterationAgent cold=new ValueIterationAgent(0.9, new TTTMDP(new DefensivePolicy()));
+		ValueIterationAgent warm=new ValueIterationAgent(0.9);
+		warm.replan(new TTTMDP(new DefensivePolicy()), 0.9);
+		PolicyIterationAgent pi=new PolicyIterationAgent(0.9);
+		pi.replan(new TTTMDP(new DefensivePolicy()), 0.9);
+		
+		for (Game g : Game.generateAllValidGames('X')) {
+			assertEquals(cold.getValue(g), warm.getValue(g), 1e-9);
+			if (!g.isTerminal()) {
+				assertEquals(cold.getPolicy().getMove(g), warm.getPolicy().getMove(g));
+				assertTrue(pi.getPolicy().getMove(g)!=null);
+			}
+		}
+		
+		System.out.println("Policy iteration replanned against a Defensive opponent model, against Defensive Agent:");
+		int[] results=TestPolicyIterationAgent.playAgainstEachOther(pi, new DefensiveAgent(), 50);
+		System.out.println("Wins: " + results[0] + " Losses: " + results[1] + " Draws: " + results[2]);
+		assertEquals(0, results[1]);
+	}
+
+	@Test
+	public void testReplanSameOpponentModel() {
+		// models built from the same opponent have the same dynamics, so replanning starts from the old values
+		ValueIterationAgent cold=new ValueIterationAgent(0.9, new TTTMDP(10, -60, -1, 0, OpponentModel.defensive()));
+		cold.initValues();
+		cold.train();
+		
+		ValueIterationAgent warm=new ValueIterationAgent(0.9, new TTTMDP(new DefensivePolicy()));
+		warm.replan(new TTTMDP(10, -60, -1, 0, OpponentModel.defensive()), 0.9);
+		assertTrue(warm.getBackups() < cold.getBackups());
+		for (Game g : Game.generateAllValidGames('X'))
+			assertEquals(cold.getValue(g), warm.getValue(g), 1e-9);
+		
+		// and the default opponent is the uniform model
+		new TTTMDP(OpponentModel.UNIFORM).compileFrom(new TTTMDP().compile());
+		new TTTMDP(OpponentModel.aggressive()).compileFrom(new TTTMDP(new AggressivePolicy()).compile());
+	}
+
+	@Test(expected=IllegalArgumentException.class)
+	public void testCompileFromOtherOpponent() {
+		// only the rewards may differ: the transitions of another opponent can't be reused
+		new TTTMDP(new DefensivePolicy()).compileFrom(new TTTMDP().compile());
+	}
+
+	@Test
+	public void testOpponentModel() {
+		System.out.println("Planned against a Defensive opponent model, against Defensive Agent:");
+		ValueIterationAgent agent=new ValueIterationAgent(0.9, new TTTMDP(new DefensivePolicy()));
+		int[] results=TestPolicyIterationAgent.playAgainstEachOther(agent, new DefensiveAgent(), 50);
+		System.out.println("Wins: " + results[0] + " Losses: " + results[1] + " Draws: " + results[2]);
+		assertEquals(0, results[1]);
+		
+		System.out.println("Planned against an Aggressive opponent model, against Aggressive Agent:");
+		agent=new ValueIterationAgent(0.9, new TTTMDP(new AggressivePolicy()));
+		results=TestPolicyIterationAgent.playAgainstEachOther(agent, new AggressiveAgent(), 50);
+		System.out.println("Wins: " + results[0] + " Losses: " + results[1] + " Draws: " + results[2]);
+		assertEquals(0, results[1]);
+	}
+
+	@Test
+	public void testTwoSidedSolver() {
+		TwoSidedSolver solver=new TwoSidedSolver();
+		ValueIterationAgent agent=new ValueIterationAgent(0.9);
+		for (Game g : Game.generateAllValidGames('X'))
+			if (!g.isTerminal())
+				assertEquals(agent.getValue(g), solver.getXValue(g), 1e-9);
+		
+		System.out.println("Two-sided solver's O policy against Random Agent:");
+		int oWins=0;
+		for (int i=0;i<50;i++) {
+			Game g=new Game(new RandomAgent(), new ValueIterationAgent(solver.getOPolicy()));
+			try {
+				g.playOut();
+			} catch (IllegalMoveException e) {
+				assertTrue(false);
+			}
+			assertTrue(g.getState()!=Game.X_WON);
+			if (g.getState()==Game.O_WON)
+				oWins++;
+		}
+		System.out.println("O wins: " + oWins);
+	}
 
 }